@@ -1,13 +1,21 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.service.GateServer;
 import com.parkit.parkingsystem.service.InteractiveShell;
+import com.parkit.parkingsystem.service.TicketHistoryExporter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class App {
     private static final Logger logger = LogManager.getLogger("App");
-    public static void main(String args[]){
+    public static void main(String args[]) throws Exception {
         logger.info("Initializing Parking System");
-        InteractiveShell.loadInterface();
+        if (args.length > 0 && "server".equals(args[0])) {
+            GateServer.launch();
+        } else if (args.length > 1 && "export".equals(args[0])) {
+            TicketHistoryExporter.launch(args[1], args.length > 2 ? args[2] : null, args.length > 3 ? args[3] : null);
+        } else {
+            InteractiveShell.loadInterface();
+        }
     }
 }
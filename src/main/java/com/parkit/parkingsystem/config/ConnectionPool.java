@@ -0,0 +1,273 @@
+package com.parkit.parkingsystem.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.metrics.Metrics;
+
+public class ConnectionPool {
+
+	private static final Logger logger = LogManager.getLogger("ConnectionPool");
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	// borrowers that found every connection in use, and those that gave up waiting
+	private static final LongAdder waits = Metrics.counter("parkit_db_pool_waits_total");
+	private static final LongAdder timeouts = Metrics.counter("parkit_db_pool_timeouts_total");
+
+	public interface ConnectionFactory {
+		Connection createConnection() throws SQLException;
+	}
+
+	private final ConnectionFactory connectionFactory;
+	private final int minSize;
+	private final int maxSize;
+	private final long idleTimeoutMillis;
+	private final long borrowTimeoutMillis;
+	// prepared statements kept per physical connection, 0 disables the cache
+	private final int statementCacheSize;
+
+	// one permit per connection that may be handed out at the same time
+	private final Semaphore permits;
+	// most recently returned connections sit at the head, so borrowers get the warmest one
+	private final LinkedBlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<>();
+	private final AtomicInteger openConnections = new AtomicInteger();
+	private final ScheduledExecutorService maintenanceExecutor;
+	private volatile boolean closed;
+
+	public ConnectionPool(ConnectionFactory connectionFactory, int minSize, int maxSize, long idleTimeoutMillis,
+			long borrowTimeoutMillis) {
+		this(connectionFactory, minSize, maxSize, idleTimeoutMillis, borrowTimeoutMillis, 0);
+	}
+
+	public ConnectionPool(ConnectionFactory connectionFactory, int minSize, int maxSize, long idleTimeoutMillis,
+			long borrowTimeoutMillis, int statementCacheSize) {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size, min: " + minSize + " max: " + maxSize);
+		}
+		this.connectionFactory = connectionFactory;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-maintenance");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1000L, idleTimeoutMillis / 2);
+		maintenanceExecutor.scheduleWithFixedDelay(this::maintain, 0, period, TimeUnit.MILLISECONDS);
+	}
+
+	public Connection borrowConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		try {
+			if (!permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+				waits.increment();
+				if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+					timeouts.increment();
+					throw new SQLTimeoutException(
+							"Timed out after " + borrowTimeoutMillis + " ms waiting for a database connection");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		}
+
+		try {
+			IdleConnection idle = pollValidIdleConnection();
+			if (idle == null) {
+				idle = openConnection();
+			}
+			return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new PooledConnectionHandler(idle.connection, idle.statements));
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	public int getOpenConnections() {
+		return openConnections.get();
+	}
+
+	public int getIdleConnections() {
+		return idleConnections.size();
+	}
+
+	public int getActiveConnections() {
+		return maxSize - permits.availablePermits();
+	}
+
+	public void close() {
+		closed = true;
+		maintenanceExecutor.shutdownNow();
+		IdleConnection idle;
+		while ((idle = idleConnections.pollFirst()) != null) {
+			discard(idle.connection, idle.statements);
+		}
+	}
+
+	private IdleConnection pollValidIdleConnection() {
+		IdleConnection idle;
+		while ((idle = idleConnections.pollFirst()) != null) {
+			if (isValid(idle.connection)) {
+				return idle;
+			}
+			logger.warn("Discarding invalid pooled DB connection");
+			discard(idle.connection, idle.statements);
+		}
+		return null;
+	}
+
+	private IdleConnection openConnection() throws SQLException {
+		logger.debug("Create DB connection");
+		Connection physical = connectionFactory.createConnection();
+		openConnections.incrementAndGet();
+		return new IdleConnection(physical, statementCacheSize > 0 ? new StatementCache(statementCacheSize) : null,
+				System.currentTimeMillis());
+	}
+
+	private void release(Connection physical, StatementCache statements) {
+		try {
+			if (closed || physical.isClosed()) {
+				discard(physical, statements);
+				return;
+			}
+			if (!physical.getAutoCommit()) {
+				// never hand an unfinished transaction to the next borrower
+				physical.rollback();
+				physical.setAutoCommit(true);
+			}
+			idleConnections.offerFirst(new IdleConnection(physical, statements, System.currentTimeMillis()));
+		} catch (SQLException e) {
+			logger.error("Error while returning connection to the pool", e);
+			discard(physical, statements);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void maintain() {
+		try {
+			evictIdleConnections();
+			while (!closed && openConnections.get() < minSize) {
+				idleConnections.offerLast(openConnection());
+			}
+		} catch (Exception e) {
+			logger.error("Error during connection pool maintenance", e);
+		}
+	}
+
+	private void evictIdleConnections() {
+		long evictBefore = System.currentTimeMillis() - idleTimeoutMillis;
+		Iterator<IdleConnection> oldestFirst = idleConnections.descendingIterator();
+		while (oldestFirst.hasNext() && openConnections.get() > minSize) {
+			IdleConnection idle = oldestFirst.next();
+			if (idle.idleSince < evictBefore && idleConnections.remove(idle)) {
+				discard(idle.connection, idle.statements);
+			}
+		}
+	}
+
+	private boolean isValid(Connection physical) {
+		try {
+			return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void discard(Connection physical, StatementCache statements) {
+		openConnections.decrementAndGet();
+		if (statements != null) {
+			statements.close();
+		}
+		try {
+			physical.close();
+			logger.debug("Closing DB connection");
+		} catch (SQLException e) {
+			logger.error("Error while closing connection", e);
+		}
+	}
+
+	private static final class IdleConnection {
+		private final Connection connection;
+		// null when statements are not cached
+		private final StatementCache statements;
+		private final long idleSince;
+
+		private IdleConnection(Connection connection, StatementCache statements, long idleSince) {
+			this.connection = connection;
+			this.statements = statements;
+			this.idleSince = idleSince;
+		}
+	}
+
+	// Hands out the physical connection but turns close() into a return to the pool, and
+	// prepareStatement into a lookup in the statement cache of the connection
+	private final class PooledConnectionHandler implements InvocationHandler {
+		private final Connection physical;
+		private final StatementCache statements;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private PooledConnectionHandler(Connection physical, StatementCache statements) {
+			this.physical = physical;
+			this.statements = statements;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (released.compareAndSet(false, true)) {
+					release(physical, statements);
+				}
+				return null;
+			case "isClosed":
+				return released.get() || physical.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled" + physical;
+			default:
+				if (released.get()) {
+					throw new SQLException("Connection has already been returned to the pool");
+				}
+				if (statements != null && StatementCache.isCacheable(method, args)) {
+					return statements.prepare(physical, (Connection) proxy, method, args);
+				}
+				try {
+					return method.invoke(physical, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
@@ -1,31 +1,251 @@
 package com.parkit.parkingsystem.config;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+
+// Connections to the primary database, where every write goes, and optionally to a read replica
+// for the lookups and reports that tolerate replication lag
 public class DataBaseConfig {
 
 	private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+	private static final LatencyHistogram getConnectionLatency = Metrics.histogram("parkit_db_get_connection_seconds");
+	private static final LatencyHistogram getReplicaConnectionLatency = Metrics
+			.histogram("parkit_db_get_replica_connection_seconds");
+
+	private static final String PROD_URL = "jdbc:mysql://localhost:3306/prod?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC&rewriteBatchedStatements=true";
+
+	private final String url;
+	private final String user;
+	private final String password;
+	// null without replica
+	private final String replicaUrl;
+	private final String replicaUser;
+	private final String replicaPassword;
+	private volatile ConnectionPool connectionPool;
+	private volatile ConnectionPool replicaConnectionPool;
+	// connection of the unit of work running on the current thread, if any
+	private final ThreadLocal<Connection> transactionConnection = new ThreadLocal<>();
+	private final ThreadLocal<List<Runnable>> afterCommitActions = new ThreadLocal<>();
+
+	// The replica is set with -Dparkit.db.replica.url, .user and .password
+	public DataBaseConfig() {
+		this(PROD_URL, "root", "rootroot", System.getProperty("parkit.db.replica.url"),
+				System.getProperty("parkit.db.replica.user", "root"),
+				System.getProperty("parkit.db.replica.password", "rootroot"));
+	}
+
+	public DataBaseConfig(String url, String user, String password) {
+		this(url, user, password, null, null, null);
+	}
+
+	public DataBaseConfig(String url, String user, String password, String replicaUrl, String replicaUser,
+			String replicaPassword) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.replicaUrl = replicaUrl;
+		this.replicaUser = replicaUser;
+		this.replicaPassword = replicaPassword;
+	}
+
 	public Connection getConnection() throws ClassNotFoundException, SQLException {
-		logger.info("Create DB connection");
-		Class.forName("com.mysql.cj.jdbc.Driver");
-		return DriverManager.getConnection(
-				"jdbc:mysql://localhost:3306/prod?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC",
-				"root", "rootroot");
+		Connection transactional = transactionConnection.get();
+		if (transactional != null) {
+			return transactional;
+		}
+		long start = System.nanoTime();
+		try {
+			return getConnectionPool().borrowConnection();
+		} finally {
+			getConnectionLatency.recordSince(start);
+		}
+	}
+
+	// For reads that tolerate replication lag: a replica connection when there is a replica,
+	// otherwise, and inside a unit of work, the same as getConnection()
+	public Connection getReadConnection() throws ClassNotFoundException, SQLException {
+		if (replicaUrl == null || transactionConnection.get() != null) {
+			return getConnection();
+		}
+		long start = System.nanoTime();
+		try {
+			return getReplicaConnectionPool().borrowConnection();
+		} finally {
+			getReplicaConnectionLatency.recordSince(start);
+		}
+	}
+
+	public boolean hasReplica() {
+		return replicaUrl != null;
+	}
+
+	// Runs the callback as one unit of work: every getConnection() made by the DAOs on this
+	// thread returns the same connection, and everything is committed or rolled back together.
+	// Nested calls join the unit of work already in progress.
+	public <T> T inTransaction(TransactionCallback<T> callback) throws Exception {
+		if (transactionConnection.get() != null) {
+			return callback.doInTransaction();
+		}
+		Connection con = getConnectionPool().borrowConnection();
+		List<Runnable> actions = new ArrayList<>();
+		boolean committed = false;
+		try {
+			con.setAutoCommit(false);
+			transactionConnection.set(nonClosing(con));
+			afterCommitActions.set(actions);
+			T result = callback.doInTransaction();
+			con.commit();
+			committed = true;
+			return result;
+		} finally {
+			transactionConnection.remove();
+			afterCommitActions.remove();
+			if (!committed) {
+				rollback(con);
+			}
+			closeConnection(con);
+			if (committed) {
+				actions.forEach(Runnable::run);
+			}
+		}
+	}
+
+	// Used to update in-memory state once the data it mirrors is durable: runs right away
+	// outside a unit of work, after the commit inside one, and never if it is rolled back
+	public void afterCommit(Runnable action) {
+		List<Runnable> actions = afterCommitActions.get();
+		if (actions == null) {
+			action.run();
+		} else {
+			actions.add(action);
+		}
+	}
+
+	public boolean isInTransaction() {
+		return transactionConnection.get() != null;
+	}
+
+	// The pool is created on first use so that configs which are never used open no connections
+	public ConnectionPool getConnectionPool() {
+		ConnectionPool pool = connectionPool;
+		if (pool == null) {
+			synchronized (this) {
+				pool = connectionPool;
+				if (pool == null) {
+					pool = createConnectionPool();
+					migrateSchema(pool);
+					connectionPool = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
+	// The replica gets its schema from the primary, it is never migrated
+	private ConnectionPool getReplicaConnectionPool() {
+		ConnectionPool pool = replicaConnectionPool;
+		if (pool == null) {
+			synchronized (this) {
+				pool = replicaConnectionPool;
+				if (pool == null) {
+					pool = createReplicaConnectionPool();
+					replicaConnectionPool = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
+	// Runs once per pool so the schema is up to date before the first DAO call
+	private void migrateSchema(ConnectionPool pool) {
+		if (!Boolean.parseBoolean(System.getProperty("parkit.db.migrate", "true"))) {
+			return;
+		}
+		try {
+			int version = new SchemaMigrator(pool).migrate();
+			logger.info("Database schema is at version {}", version);
+		} catch (SQLException e) {
+			pool.close();
+			throw new IllegalStateException("Unable to migrate database schema", e);
+		}
+	}
+
+	protected ConnectionPool createConnectionPool() {
+		return new ConnectionPool(() -> DriverManager.getConnection(url, user, password),
+				Integer.getInteger("parkit.db.pool.minSize", 1), Integer.getInteger("parkit.db.pool.maxSize", 10),
+				Long.getLong("parkit.db.pool.idleTimeoutMillis", 300000L),
+				Long.getLong("parkit.db.pool.borrowTimeoutMillis", 5000L), getStatementCacheSize());
+	}
+
+	protected ConnectionPool createReplicaConnectionPool() {
+		return new ConnectionPool(() -> DriverManager.getConnection(replicaUrl, replicaUser, replicaPassword),
+				Integer.getInteger("parkit.db.replica.pool.minSize", 1),
+				Integer.getInteger("parkit.db.replica.pool.maxSize", 10),
+				Long.getLong("parkit.db.pool.idleTimeoutMillis", 300000L),
+				Long.getLong("parkit.db.pool.borrowTimeoutMillis", 5000L), getStatementCacheSize());
+	}
+
+	// Prepared statements kept open per connection, enough for every query in DBConstants
+	private static int getStatementCacheSize() {
+		return Integer.getInteger("parkit.db.statementCacheSize", 64);
+	}
+
+	public void shutdown() {
+		synchronized (this) {
+			if (connectionPool != null) {
+				connectionPool.close();
+				connectionPool = null;
+			}
+			if (replicaConnectionPool != null) {
+				replicaConnectionPool.close();
+				replicaConnectionPool = null;
+			}
+		}
+	}
+
+	private void rollback(Connection con) {
+		try {
+			con.rollback();
+			logger.debug("Rolled back DB transaction");
+		} catch (SQLException e) {
+			logger.error("Error while rolling back transaction", e);
+		}
+	}
+
+	// DAOs close what getConnection() gives them, which must not end the unit of work
+	private static Connection nonClosing(Connection con) {
+		return (Connection) Proxy.newProxyInstance(DataBaseConfig.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					if ("close".equals(method.getName())) {
+						return null;
+					}
+					try {
+						return method.invoke(con, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
 	}
 
 	public void closeConnection(Connection con) {
 		if (con != null) {
 			try {
 				con.close();
-				logger.info("Closing DB connection");
+				logger.debug("Closing DB connection");
 			} catch (SQLException e) {
 				logger.error("Error while closing connection", e);
 			}
@@ -36,7 +256,7 @@ public class DataBaseConfig {
 		if (ps != null) {
 			try {
 				ps.close();
-				logger.info("Closing Prepared Statement");
+				logger.debug("Closing Prepared Statement");
 			} catch (SQLException e) {
 				logger.error("Error while closing prepared statement", e);
 			}
@@ -47,7 +267,7 @@ public class DataBaseConfig {
 		if (rs != null) {
 			try {
 				rs.close();
-				logger.info("Closing Result Set");
+				logger.debug("Closing Result Set");
 			} catch (SQLException e) {
 				logger.error("Error while closing result set", e);
 			}
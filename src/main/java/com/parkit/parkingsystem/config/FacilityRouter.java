@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem.config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Maps each facility to the database (shard) holding its spots and tickets, so a busy site only
+// loads its own database and connection pool. Configured with -Dparkit.facilities=1,2,3 and, per
+// facility, -Dparkit.facility.<id>.url, .user and .password, and optionally .replica.url,
+// .replica.user and .replica.password. Facilities with the same URL share one DataBaseConfig and
+// one pool; a facility without URL goes to the default database.
+public class FacilityRouter {
+
+	private static final Logger logger = LogManager.getLogger("FacilityRouter");
+
+	private final Map<Integer, DataBaseConfig> dataBaseConfigs = new LinkedHashMap<>();
+
+	public static FacilityRouter fromSystemProperties() {
+		FacilityRouter router = new FacilityRouter();
+		Map<String, DataBaseConfig> shards = new HashMap<>();
+		for (String facility : System.getProperty("parkit.facilities", "").split(",")) {
+			if (facility.trim().isEmpty()) {
+				continue;
+			}
+			int facilityId;
+			try {
+				facilityId = Integer.parseInt(facility.trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid facility " + facility + " in parkit.facilities", e);
+			}
+			String prefix = "parkit.facility." + facilityId + ".";
+			String url = System.getProperty(prefix + "url");
+			DataBaseConfig dataBaseConfig = shards.computeIfAbsent(url == null ? "" : url,
+					shard -> url == null ? new DataBaseConfig()
+							: new DataBaseConfig(url, System.getProperty(prefix + "user", "root"),
+									System.getProperty(prefix + "password", ""),
+									System.getProperty(prefix + "replica.url"),
+									System.getProperty(prefix + "replica.user", "root"),
+									System.getProperty(prefix + "replica.password", "")));
+			router.addFacility(facilityId, dataBaseConfig);
+		}
+		if (router.dataBaseConfigs.isEmpty()) {
+			throw new IllegalArgumentException("No facility in parkit.facilities");
+		}
+		logger.info("Routing {} facilities to {} databases", router.dataBaseConfigs.size(), shards.size());
+		return router;
+	}
+
+	public void addFacility(int facilityId, DataBaseConfig dataBaseConfig) {
+		if (dataBaseConfigs.putIfAbsent(facilityId, dataBaseConfig) != null) {
+			throw new IllegalArgumentException("Facility " + facilityId + " is configured twice");
+		}
+	}
+
+	// Throws IllegalArgumentException for a facility that is not configured
+	public DataBaseConfig getDataBaseConfig(int facilityId) {
+		DataBaseConfig dataBaseConfig = dataBaseConfigs.get(facilityId);
+		if (dataBaseConfig == null) {
+			throw new IllegalArgumentException("Unknown facility " + facilityId);
+		}
+		return dataBaseConfig;
+	}
+
+	// In configuration order
+	public Set<Integer> getFacilityIds() {
+		return Collections.unmodifiableSet(dataBaseConfigs.keySet());
+	}
+
+	public void shutdown() {
+		dataBaseConfigs.values().forEach(DataBaseConfig::shutdown);
+	}
+}
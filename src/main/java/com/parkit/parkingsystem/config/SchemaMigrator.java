@@ -0,0 +1,108 @@
+package com.parkit.parkingsystem.config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Brings the schema created by resources/Data.sql up to date. Each script of MIGRATIONS is
+// applied once, in order, and recorded in the schema_version table.
+public class SchemaMigrator {
+
+	private static final Logger logger = LogManager.getLogger("SchemaMigrator");
+
+	private static final String MIGRATION_LOCATION = "/db/migration/";
+
+	// append new scripts here, the version is the number after the V
+	private static final String[] MIGRATIONS = { "V1__ticket_and_parking_indexes.sql",
+			"V2__ticket_price_in_cents.sql", "V3__ticket_out_time_index.sql", "V4__facility.sql",
+			"V5__ticket_archive.sql" };
+
+	private static final String CREATE_SCHEMA_VERSION = "create table if not exists schema_version(VERSION int PRIMARY KEY, DESCRIPTION varchar(100) NOT NULL, INSTALLED_ON DATETIME NOT NULL)";
+	private static final String GET_SCHEMA_VERSION = "select max(VERSION) from schema_version";
+	private static final String SAVE_SCHEMA_VERSION = "insert into schema_version(VERSION, DESCRIPTION, INSTALLED_ON) values(?,?,?)";
+
+	private final ConnectionPool connectionPool;
+
+	public SchemaMigrator(ConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+
+	public int migrate() throws SQLException {
+		try (Connection con = connectionPool.borrowConnection()) {
+			try (Statement statement = con.createStatement()) {
+				statement.execute(CREATE_SCHEMA_VERSION);
+			}
+			int currentVersion = getCurrentVersion(con);
+			for (String migration : MIGRATIONS) {
+				int version = getVersion(migration);
+				if (version > currentVersion) {
+					apply(con, migration, version);
+					currentVersion = version;
+				}
+			}
+			return currentVersion;
+		}
+	}
+
+	private int getCurrentVersion(Connection con) throws SQLException {
+		try (PreparedStatement ps = con.prepareStatement(GET_SCHEMA_VERSION); ResultSet rs = ps.executeQuery()) {
+			return rs.next() ? rs.getInt(1) : 0;
+		}
+	}
+
+	private void apply(Connection con, String migration, int version) throws SQLException {
+		logger.info("Applying schema migration {}", migration);
+		con.setAutoCommit(false);
+		try (Statement statement = con.createStatement();
+				PreparedStatement ps = con.prepareStatement(SAVE_SCHEMA_VERSION)) {
+			for (String sql : readScript(migration).split(";")) {
+				if (!sql.trim().isEmpty()) {
+					statement.execute(sql);
+				}
+			}
+			ps.setInt(1, version);
+			ps.setString(2, getDescription(migration));
+			ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+			ps.executeUpdate();
+			con.commit();
+		} catch (SQLException e) {
+			// DDL is not transactional in MySQL, a failed script may need manual cleanup
+			con.rollback();
+			throw new SQLException("Schema migration " + migration + " failed", e);
+		} finally {
+			con.setAutoCommit(true);
+		}
+	}
+
+	private String readScript(String migration) throws SQLException {
+		InputStream script = SchemaMigrator.class.getResourceAsStream(MIGRATION_LOCATION + migration);
+		if (script == null) {
+			throw new SQLException("Schema migration " + migration + " not found");
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(script, StandardCharsets.UTF_8))) {
+			return reader.lines().collect(Collectors.joining("\n"));
+		} catch (IOException e) {
+			throw new SQLException("Unable to read schema migration " + migration, e);
+		}
+	}
+
+	private static int getVersion(String migration) {
+		return Integer.parseInt(migration.substring(1, migration.indexOf("__")));
+	}
+
+	private static String getDescription(String migration) {
+		return migration.substring(migration.indexOf("__") + 2, migration.lastIndexOf('.')).replace('_', ' ');
+	}
+}
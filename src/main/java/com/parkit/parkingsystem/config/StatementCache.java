@@ -0,0 +1,180 @@
+package com.parkit.parkingsystem.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.metrics.Metrics;
+
+// Prepared statements of one physical connection, kept open across borrows so that the driver
+// prepares each query once per connection instead of once per DAO call. A statement is taken out
+// of the cache while it is in use and its close() puts it back, least recently used ones are
+// closed beyond maxSize.
+final class StatementCache {
+
+	private static final Logger logger = LogManager.getLogger("StatementCache");
+
+	private static final LongAdder hits = Metrics.counter("parkit_db_statement_cache_hits_total");
+	private static final LongAdder misses = Metrics.counter("parkit_db_statement_cache_misses_total");
+	private static final LongAdder evictions = Metrics.counter("parkit_db_statement_cache_evictions_total");
+
+	private final int maxSize;
+	// keyed by the arguments of prepareStatement: the SQL and the result set or generated keys options
+	private final LinkedHashMap<List<Object>, PreparedStatement> statements;
+	private boolean closed;
+
+	StatementCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.statements = new LinkedHashMap<List<Object>, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<List<Object>, PreparedStatement> eldest) {
+				if (size() <= StatementCache.this.maxSize) {
+					return false;
+				}
+				evictions.increment();
+				closeStatement(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	// prepareStatement(sql), (sql, autoGeneratedKeys) and (sql, resultSetType, resultSetConcurrency)
+	static boolean isCacheable(Method method, Object[] args) {
+		if (!"prepareStatement".equals(method.getName()) || args.length > 3) {
+			return false;
+		}
+		// statements returning chosen key columns are not used by the DAOs
+		return args.length == 1 || args[1] instanceof Integer;
+	}
+
+	// Returns a cached statement, or one prepared on the physical connection, whose close() hands
+	// it back to the cache. owner is the connection getConnection() of the statement returns.
+	PreparedStatement prepare(Connection physical, Connection owner, Method method, Object[] args)
+			throws Throwable {
+		List<Object> key = Arrays.asList(args.clone());
+		PreparedStatement statement;
+		synchronized (this) {
+			statement = statements.remove(key);
+		}
+		if (statement != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			try {
+				statement = (PreparedStatement) method.invoke(physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+		return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, new CachedStatementHandler(key, statement, owner));
+	}
+
+	// Closes the cached statements, those in use are closed when they are handed back
+	synchronized void close() {
+		closed = true;
+		Iterator<PreparedStatement> iterator = statements.values().iterator();
+		while (iterator.hasNext()) {
+			closeStatement(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	synchronized int size() {
+		return statements.size();
+	}
+
+	private void giveBack(List<Object> key, PreparedStatement statement) {
+		try {
+			if (statement.isClosed()) {
+				return;
+			}
+			statement.clearParameters();
+			// left over by a batch that failed before executeBatch
+			statement.clearBatch();
+			statement.clearWarnings();
+		} catch (SQLException e) {
+			logger.error("Error while resetting cached statement", e);
+			closeStatement(statement);
+			return;
+		}
+		List<PreparedStatement> toClose = new ArrayList<>(1);
+		synchronized (this) {
+			// the same query prepared twice at once leaves a spare copy
+			if (closed || statements.containsKey(key)) {
+				toClose.add(statement);
+			} else {
+				statements.put(key, statement);
+			}
+		}
+		toClose.forEach(StatementCache::closeStatement);
+	}
+
+	private static void closeStatement(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			logger.error("Error while closing cached statement", e);
+		}
+	}
+
+	private final class CachedStatementHandler implements InvocationHandler {
+		private final List<Object> key;
+		private final PreparedStatement statement;
+		private final Connection owner;
+		private final AtomicBoolean returned = new AtomicBoolean();
+
+		private CachedStatementHandler(List<Object> key, PreparedStatement statement, Connection owner) {
+			this.key = key;
+			this.statement = statement;
+			this.owner = owner;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (returned.compareAndSet(false, true)) {
+					giveBack(key, statement);
+				}
+				return null;
+			case "isClosed":
+				return returned.get() || statement.isClosed();
+			case "getConnection":
+				return owner;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Cached" + statement;
+			default:
+				if (returned.get()) {
+					throw new SQLException("Statement is closed");
+				}
+				try {
+					return method.invoke(statement, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.parkit.parkingsystem.config;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.constants.Facility;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryParkingSpotRepository;
+import com.parkit.parkingsystem.dao.InMemoryTicketRepository;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.metrics.Metrics;
+
+// Storage backend picked at startup with -Dparkit.storage:
+//   jdbc (default): the MySQL database of DataBaseConfig, with the spot index and, when enabled,
+//   the ticket write pipeline. The site is facility -Dparkit.facility, 1 by default.
+//   memory: everything in the JVM, for kiosks without a database. Nothing survives a restart.
+//   The lot has -Dparkit.memory.carSpots and -Dparkit.memory.bikeSpots spots, 3 and 2 by
+//   default like Data.sql.
+public class StorageConfig {
+
+	private static final Logger logger = LogManager.getLogger("StorageConfig");
+
+	private final TicketRepository ticketRepository;
+	private final ParkingSpotRepository parkingSpotRepository;
+	private final DataBaseConfig dataBaseConfig;
+	// the same DAOs as above for jdbc storage, null otherwise
+	private TicketDAO ticketDAO;
+	private ParkingSpotDAO parkingSpotDAO;
+	// false when the DataBaseConfig is shared with other facilities and shut down by the router
+	private boolean ownsDataBaseConfig = true;
+
+	private StorageConfig(TicketRepository ticketRepository, ParkingSpotRepository parkingSpotRepository,
+			DataBaseConfig dataBaseConfig) {
+		this.ticketRepository = ticketRepository;
+		this.parkingSpotRepository = parkingSpotRepository;
+		this.dataBaseConfig = dataBaseConfig;
+	}
+
+	public static StorageConfig fromSystemProperties() {
+		String storage = System.getProperty("parkit.storage", "jdbc");
+		switch (storage) {
+		case "jdbc":
+			return jdbc(new DataBaseConfig(), Integer.getInteger("parkit.facility", Facility.DEFAULT_ID));
+		case "memory":
+			Map<ParkingType, Integer> spotsPerType = new EnumMap<>(ParkingType.class);
+			spotsPerType.put(ParkingType.CAR, Integer.getInteger("parkit.memory.carSpots", 3));
+			spotsPerType.put(ParkingType.BIKE, Integer.getInteger("parkit.memory.bikeSpots", 2));
+			return inMemory(spotsPerType);
+		default:
+			throw new IllegalArgumentException("Unknown storage " + storage + ", use jdbc or memory");
+		}
+	}
+
+	public static StorageConfig jdbc(DataBaseConfig dataBaseConfig) {
+		return jdbc(dataBaseConfig, Facility.DEFAULT_ID);
+	}
+
+	public static StorageConfig jdbc(DataBaseConfig dataBaseConfig, int facilityId) {
+		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig, facilityId);
+		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig, facilityId);
+		parkingSpotDAO.startSpotIndex(Long.getLong("parkit.spotIndex.reconciliationMillis", 60000L));
+		if (Boolean.getBoolean("parkit.ticketWritePipeline.enabled")) {
+			ticketDAO.startWritePipeline(Integer.getInteger("parkit.ticketWritePipeline.writerThreads", 4),
+					Integer.getInteger("parkit.ticketWritePipeline.queueCapacity", 1000),
+					Integer.getInteger("parkit.ticketWritePipeline.batchSize", 100),
+					Long.getLong("parkit.ticketWritePipeline.flushIntervalMillis", 5L));
+		}
+		StorageConfig storageConfig = new StorageConfig(ticketDAO, parkingSpotDAO, dataBaseConfig);
+		storageConfig.ticketDAO = ticketDAO;
+		storageConfig.parkingSpotDAO = parkingSpotDAO;
+		return storageConfig;
+	}
+
+	// One jdbc storage per facility, on the database the router maps it to. Closing them leaves
+	// the databases to router.shutdown().
+	public static Map<Integer, StorageConfig> jdbc(FacilityRouter router) {
+		Map<Integer, StorageConfig> storageConfigs = new LinkedHashMap<>();
+		for (int facilityId : router.getFacilityIds()) {
+			StorageConfig storageConfig = jdbc(router.getDataBaseConfig(facilityId), facilityId);
+			storageConfig.ownsDataBaseConfig = false;
+			storageConfigs.put(facilityId, storageConfig);
+		}
+		return storageConfigs;
+	}
+
+	public static StorageConfig inMemory(Map<ParkingType, Integer> spotsPerType) {
+		logger.info("Using in-memory storage, tickets are lost when the application stops");
+		InMemoryParkingSpotRepository parkingSpotRepository = new InMemoryParkingSpotRepository(spotsPerType);
+		for (ParkingType parkingType : ParkingType.values()) {
+			String labels = "{facility=\"" + Facility.DEFAULT_ID + "\",type=\"" + parkingType + "\"}";
+			Metrics.gauge("parkit_parking_spots_free" + labels, () -> parkingSpotRepository.countAvailable(parkingType));
+			Metrics.gauge("parkit_parking_spots_occupied" + labels,
+					() -> parkingSpotRepository.countSpots(parkingType)
+							- parkingSpotRepository.countAvailable(parkingType));
+		}
+		return new StorageConfig(new InMemoryTicketRepository(), parkingSpotRepository, null);
+	}
+
+	public TicketRepository getTicketRepository() {
+		return ticketRepository;
+	}
+
+	public ParkingSpotRepository getParkingSpotRepository() {
+		return parkingSpotRepository;
+	}
+
+	// Null for in-memory storage, which has no transactions
+	public DataBaseConfig getDataBaseConfig() {
+		return dataBaseConfig;
+	}
+
+	// Flushes pending writes and releases the connections
+	public void close() {
+		if (dataBaseConfig != null) {
+			ticketDAO.stopWritePipeline();
+			parkingSpotDAO.stopSpotIndex();
+			if (ownsDataBaseConfig) {
+				dataBaseConfig.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,6 @@
+package com.parkit.parkingsystem.config;
+
+public interface TransactionCallback<T> {
+
+	T doInTransaction() throws Exception;
+}
@@ -2,11 +2,37 @@ package com.parkit.parkingsystem.constants;
 
 public class DBConstants {
 
-	public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
-	public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+	// every query is scoped to one facility, the FACILITY_ID parameter comes last (last of each
+	// part for the queries that also read the archive)
+	public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ? and FACILITY_ID = ?";
+	public static final String GET_NEXT_PARKING_SPOT_AFTER = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ? and PARKING_NUMBER > ? and FACILITY_ID = ?";
+	public static final String CLAIM_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and AVAILABLE = true and FACILITY_ID = ?";
+	public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking where FACILITY_ID = ?";
+	public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ? and FACILITY_ID = ?";
+	public static final String RESET_PARKING_SPOTS = "update parking set available = true where FACILITY_ID = ?";
 
-	public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
-	public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
-	public static final String GET_TICKET = "SELECT t.ID, t.PARKING_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE FROM ticket t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.VEHICLE_REG_NUMBER=? ORDER BY t.IN_TIME DESC LIMIT 1";
-	public static final String GET_NB_TICKET = "SELECT COUNT(*) FROM ticket WHERE VEHICLE_REG_NUMBER = ?";
+	public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE_CENTS, IN_TIME, OUT_TIME, FACILITY_ID) values(?,?,?,?,?,?)";
+	public static final String UPDATE_TICKET = "update ticket set PRICE_CENTS=?, OUT_TIME=? where ID=?";
+	public static final String CLOSE_TICKET = "update ticket set PRICE_CENTS=?, OUT_TIME=? where ID=? and OUT_TIME is null";
+	public static final String UPDATE_OPEN_TICKET_BY_PLATE = "update ticket set PRICE_CENTS=?, OUT_TIME=? where VEHICLE_REG_NUMBER=? and OUT_TIME is null and FACILITY_ID=?";
+	public static final String GET_TICKET = "SELECT t.ID, t.PARKING_NUMBER, t.PRICE_CENTS, t.IN_TIME, t.OUT_TIME, p.TYPE FROM ticket t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.VEHICLE_REG_NUMBER=? AND t.FACILITY_ID=? ORDER BY t.IN_TIME DESC LIMIT 1";
+	public static final String GET_OPEN_TICKET = "SELECT t.ID, t.PARKING_NUMBER, t.PRICE_CENTS, t.IN_TIME, t.OUT_TIME, p.TYPE FROM ticket t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.VEHICLE_REG_NUMBER=? AND t.OUT_TIME IS NULL AND t.FACILITY_ID=? ORDER BY t.IN_TIME DESC LIMIT 1";
+	public static final String GET_NB_TICKET = "SELECT (SELECT COUNT(*) FROM ticket WHERE VEHICLE_REG_NUMBER = ? AND FACILITY_ID = ?) + COALESCE((SELECT ARCHIVED_TICKETS FROM ticket_plate_summary WHERE VEHICLE_REG_NUMBER = ? AND FACILITY_ID = ?), 0)";
+	public static final String GET_CLOSED_TICKETS_PAGE = "SELECT t.ID, t.IN_TIME, t.OUT_TIME, p.TYPE, (SELECT COUNT(*) FROM ticket prev WHERE prev.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER AND prev.FACILITY_ID = t.FACILITY_ID AND prev.IN_TIME < t.IN_TIME) + (SELECT COUNT(*) FROM ticket_archive prev WHERE prev.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER AND prev.FACILITY_ID = t.FACILITY_ID AND prev.IN_TIME < t.IN_TIME) FROM ticket t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.OUT_TIME IS NOT NULL AND t.OUT_TIME >= ? AND t.OUT_TIME < ? AND t.ID > ? AND t.FACILITY_ID = ? ORDER BY t.ID LIMIT ?";
+	public static final String STREAM_CLOSED_TICKETS = "SELECT t.IN_TIME, t.OUT_TIME, p.TYPE, t.PRICE_CENTS FROM ticket t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.OUT_TIME >= ? AND t.OUT_TIME < ? AND t.FACILITY_ID = ?"
+			+ " UNION ALL SELECT t.IN_TIME, t.OUT_TIME, p.TYPE, t.PRICE_CENTS FROM ticket_archive t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.OUT_TIME >= ? AND t.OUT_TIME < ? AND t.FACILITY_ID = ?";
+	public static final String STREAM_TICKETS_PARKED_AT = "SELECT t.IN_TIME, t.OUT_TIME, p.TYPE, t.PRICE_CENTS FROM ticket t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.IN_TIME < ? AND (t.OUT_TIME IS NULL OR t.OUT_TIME >= ?) AND t.FACILITY_ID = ?"
+			+ " UNION ALL SELECT t.IN_TIME, t.OUT_TIME, p.TYPE, t.PRICE_CENTS FROM ticket_archive t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.IN_TIME < ? AND t.OUT_TIME >= ? AND t.FACILITY_ID = ?";
+	// sorted by exit time, so that the row groups of the history export cover distinct periods
+	public static final String STREAM_CLOSED_TICKET_DETAILS = "SELECT t.IN_TIME, t.OUT_TIME, p.TYPE, t.PRICE_CENTS, t.VEHICLE_REG_NUMBER, t.PARKING_NUMBER FROM ticket t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.OUT_TIME >= ? AND t.OUT_TIME < ? AND t.FACILITY_ID = ?"
+			+ " UNION ALL SELECT t.IN_TIME, t.OUT_TIME, p.TYPE, t.PRICE_CENTS, t.VEHICLE_REG_NUMBER, t.PARKING_NUMBER FROM ticket_archive t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.OUT_TIME >= ? AND t.OUT_TIME < ? AND t.FACILITY_ID = ? ORDER BY 2";
+	public static final String UPDATE_TICKET_PRICE = "update ticket set PRICE_CENTS=? where ID=?";
+
+	// closed tickets past the archive horizon are moved to ticket_archive, ticket_plate_summary
+	// keeps how many each plate has there
+	public static final String GET_ARCHIVED_TICKET = "SELECT t.ID, t.PARKING_NUMBER, t.PRICE_CENTS, t.IN_TIME, t.OUT_TIME, p.TYPE FROM ticket_archive t,parking p WHERE t.PARKING_NUMBER = p.PARKING_NUMBER AND t.VEHICLE_REG_NUMBER=? AND t.FACILITY_ID=? ORDER BY t.IN_TIME DESC LIMIT 1";
+	public static final String GET_TICKETS_TO_ARCHIVE = "SELECT ID, VEHICLE_REG_NUMBER FROM ticket WHERE OUT_TIME < ? AND FACILITY_ID = ? ORDER BY OUT_TIME LIMIT ? FOR UPDATE";
+	public static final String ARCHIVE_TICKET = "insert into ticket_archive(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE_CENTS, IN_TIME, OUT_TIME, FACILITY_ID) select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE_CENTS, IN_TIME, OUT_TIME, FACILITY_ID from ticket where ID=?";
+	public static final String DELETE_TICKET = "delete from ticket where ID=?";
+	public static final String ADD_ARCHIVED_TICKETS = "insert into ticket_plate_summary(VEHICLE_REG_NUMBER, ARCHIVED_TICKETS, FACILITY_ID) values(?,?,?) on duplicate key update ARCHIVED_TICKETS = ARCHIVED_TICKETS + values(ARCHIVED_TICKETS)";
 }
@@ -0,0 +1,6 @@
+package com.parkit.parkingsystem.constants;
+
+public class Facility {
+    // facility of single-site setups and of the rows saved before facilities existed
+    public static final int DEFAULT_ID = 1;
+}
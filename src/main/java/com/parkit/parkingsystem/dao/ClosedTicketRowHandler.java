@@ -0,0 +1,10 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+// Receives closed tickets with their plate and spot as streamed rows, for the history export
+public interface ClosedTicketRowHandler {
+
+	void onTicket(long inTime, long outTime, String vehicleRegNumber, int parkingNumber, ParkingType parkingType,
+			long priceInCents);
+}
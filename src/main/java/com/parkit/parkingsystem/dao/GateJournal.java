@@ -0,0 +1,293 @@
+package com.parkit.parkingsystem.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+
+// Append-only journal of gate events in a memory-mapped file, written before the DB so that
+// gates keep working while it is slow or down. Records have a fixed size and are numbered from 1;
+// the file is a ring of `capacity` slots, a slot is reused once its record has been replayed.
+//
+// Header (64 bytes): magic, format version, capacity, sequence of the last replayed record.
+// Record (64 bytes): sequence, event type, parking type, plate length, spot number, in time,
+// out time, price in cents, plate (UTF-8, at most 20 bytes), CRC32 of the preceding bytes.
+public class GateJournal implements Closeable {
+
+	private static final Logger logger = LogManager.getLogger("GateJournal");
+
+	public enum SyncPolicy {
+		// msync after each record, an acknowledged event survives a power loss
+		EVERY_RECORD,
+		// msync every sync interval, a crash of the host can lose the last interval
+		PERIODIC,
+		// left to the OS, only survives a crash of the JVM
+		NONE
+	}
+
+	public static final byte ENTRY = 1;
+	public static final byte EXIT = 2;
+
+	private static final int MAGIC = 0x50474a31;
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int RECORD_SIZE = 64;
+	private static final int MAX_PLATE_BYTES = 20;
+	private static final int CRC_OFFSET = RECORD_SIZE - 4;
+	private static final int REPLAYED_OFFSET = 12;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final SyncPolicy syncPolicy;
+	private final ScheduledExecutorService syncExecutor;
+	private final byte[] recordBytes = new byte[RECORD_SIZE];
+	private final CRC32 crc = new CRC32();
+	private long lastSequence;
+	private long replayedSequence;
+
+	public GateJournal(Path file, int capacity, SyncPolicy syncPolicy, long syncIntervalMillis) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		boolean created = channel.size() == 0;
+		try {
+			if (!created) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				channel.read(header, 0);
+				if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+					throw new IOException("Not a gate journal: " + file);
+				}
+				// the ring size is fixed when the file is created
+				capacity = header.getInt(8);
+			}
+			this.capacity = capacity;
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		this.syncPolicy = syncPolicy;
+		if (created) {
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, FORMAT_VERSION);
+			buffer.putInt(8, capacity);
+			buffer.putLong(REPLAYED_OFFSET, 0);
+			buffer.force();
+		} else {
+			recover();
+		}
+		if (syncPolicy == SyncPolicy.PERIODIC) {
+			syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "gate-journal-sync");
+				thread.setDaemon(true);
+				return thread;
+			});
+			syncExecutor.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		} else {
+			syncExecutor = null;
+		}
+	}
+
+	// The records after the checkpoint are the ones with consecutive sequences and a valid CRC,
+	// a record torn by a crash ends the journal
+	private void recover() {
+		replayedSequence = buffer.getLong(REPLAYED_OFFSET);
+		lastSequence = replayedSequence;
+		while (lastSequence - replayedSequence < capacity && read(lastSequence + 1) != null) {
+			lastSequence++;
+		}
+		logger.info("Gate journal recovered, {} records to replay", lastSequence - replayedSequence);
+	}
+
+	public long appendEntry(Ticket ticket) {
+		return append(ENTRY, ticket);
+	}
+
+	public long appendExit(Ticket ticket) {
+		return append(EXIT, ticket);
+	}
+
+	// Returns the sequence of the record. Throws IllegalStateException when every slot holds a
+	// record that is not replayed yet.
+	private synchronized long append(byte eventType, Ticket ticket) {
+		byte[] plate = ticket.getVehicleRegNumber().getBytes(StandardCharsets.UTF_8);
+		if (plate.length > MAX_PLATE_BYTES) {
+			throw new IllegalArgumentException("Vehicle registration number too long for the journal");
+		}
+		if (lastSequence - replayedSequence >= capacity) {
+			throw new IllegalStateException("Gate journal is full, " + capacity + " records wait for the DB");
+		}
+		long sequence = lastSequence + 1;
+		ByteBuffer record = ByteBuffer.wrap(recordBytes);
+		record.putLong(sequence);
+		record.put(eventType);
+		record.put((byte) ticket.getParkingSpot().getParkingType().ordinal());
+		record.putShort((short) plate.length);
+		record.putInt(ticket.getParkingSpot().getId());
+		record.putLong(ticket.getInTimeMillis());
+		record.putLong(ticket.getOutTimeMillis());
+		record.putLong(ticket.getPriceInCents());
+		record.put(plate);
+		for (int i = plate.length; i < MAX_PLATE_BYTES; i++) {
+			record.put((byte) 0);
+		}
+		crc.reset();
+		crc.update(recordBytes, 0, CRC_OFFSET);
+		record.putInt((int) crc.getValue());
+
+		ByteBuffer slot = buffer.duplicate();
+		slot.position(slotOffset(sequence));
+		slot.put(recordBytes);
+		if (syncPolicy == SyncPolicy.EVERY_RECORD) {
+			buffer.force();
+		}
+		lastSequence = sequence;
+		notifyAll();
+		return sequence;
+	}
+
+	// Returns null when the slot does not hold a valid record with this sequence
+	public synchronized Record read(long sequence) {
+		if (sequence <= 0) {
+			return null;
+		}
+		byte[] bytes = new byte[RECORD_SIZE];
+		ByteBuffer slot = buffer.duplicate();
+		slot.position(slotOffset(sequence));
+		slot.get(bytes);
+		ByteBuffer record = ByteBuffer.wrap(bytes);
+		crc.reset();
+		crc.update(bytes, 0, CRC_OFFSET);
+		if (record.getLong(0) != sequence || record.getInt(CRC_OFFSET) != (int) crc.getValue()) {
+			return null;
+		}
+		record.position(8);
+		byte eventType = record.get();
+		ParkingType parkingType = ParkingType.values()[record.get()];
+		short plateLength = record.getShort();
+		int parkingNumber = record.getInt();
+		long inTime = record.getLong();
+		long outTime = record.getLong();
+		long priceInCents = record.getLong();
+		String vehicleRegNumber = new String(bytes, record.position(), plateLength, StandardCharsets.UTF_8);
+		return new Record(sequence, eventType, vehicleRegNumber, parkingType, parkingNumber, inTime, outTime,
+				priceInCents);
+	}
+
+	// Records up to this sequence are in the DB, their slots can be reused
+	public synchronized void markReplayed(long sequence) {
+		if (sequence > replayedSequence && sequence <= lastSequence) {
+			replayedSequence = sequence;
+			buffer.putLong(REPLAYED_OFFSET, sequence);
+		}
+	}
+
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	public synchronized long getReplayedSequence() {
+		return replayedSequence;
+	}
+
+	public synchronized long getPendingCount() {
+		return lastSequence - replayedSequence;
+	}
+
+	// Waits until a record after the given sequence is appended, or the timeout elapses
+	public synchronized void awaitAppend(long afterSequence, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while (lastSequence <= afterSequence && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+	}
+
+	public synchronized void sync() {
+		buffer.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (syncExecutor != null) {
+			syncExecutor.shutdownNow();
+		}
+		sync();
+		channel.close();
+	}
+
+	private int slotOffset(long sequence) {
+		return HEADER_SIZE + (int) ((sequence - 1) % capacity) * RECORD_SIZE;
+	}
+
+	public static final class Record {
+		private final long sequence;
+		private final byte eventType;
+		private final String vehicleRegNumber;
+		private final ParkingType parkingType;
+		private final int parkingNumber;
+		private final long inTime;
+		private final long outTime;
+		private final long priceInCents;
+
+		private Record(long sequence, byte eventType, String vehicleRegNumber, ParkingType parkingType,
+				int parkingNumber, long inTime, long outTime, long priceInCents) {
+			this.sequence = sequence;
+			this.eventType = eventType;
+			this.vehicleRegNumber = vehicleRegNumber;
+			this.parkingType = parkingType;
+			this.parkingNumber = parkingNumber;
+			this.inTime = inTime;
+			this.outTime = outTime;
+			this.priceInCents = priceInCents;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public byte getEventType() {
+			return eventType;
+		}
+
+		public String getVehicleRegNumber() {
+			return vehicleRegNumber;
+		}
+
+		public ParkingType getParkingType() {
+			return parkingType;
+		}
+
+		public int getParkingNumber() {
+			return parkingNumber;
+		}
+
+		public long getInTimeMillis() {
+			return inTime;
+		}
+
+		public long getOutTimeMillis() {
+			return outTime;
+		}
+
+		public long getPriceInCents() {
+			return priceInCents;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.parkit.parkingsystem.dao;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.parkit.parkingsystem.constants.Facility;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+// Spots kept in arrays indexed by spot number. Spots are numbered from 1 in the order of
+// ParkingType, like in Data.sql, so the spots of a type are a contiguous range. A spot is
+// claimed with a compare-and-set on its availability flag.
+public class InMemoryParkingSpotRepository implements ParkingSpotRepository {
+
+	private static final int FREE = 1;
+	private static final int TAKEN = 0;
+
+	// first and last spot number of each type, by ordinal
+	private final int[] firstSpots = new int[ParkingType.values().length];
+	private final int[] lastSpots = new int[ParkingType.values().length];
+	private final ParkingType[] parkingTypes;
+	private final AtomicIntegerArray availability;
+
+	public InMemoryParkingSpotRepository(Map<ParkingType, Integer> spotsPerType) {
+		int spotCount = 0;
+		for (ParkingType parkingType : ParkingType.values()) {
+			firstSpots[parkingType.ordinal()] = spotCount + 1;
+			spotCount += spotsPerType.getOrDefault(parkingType, 0);
+			lastSpots[parkingType.ordinal()] = spotCount;
+		}
+		parkingTypes = new ParkingType[spotCount + 1];
+		availability = new AtomicIntegerArray(spotCount + 1);
+		for (ParkingType parkingType : ParkingType.values()) {
+			for (int spot = firstSpots[parkingType.ordinal()]; spot <= lastSpots[parkingType.ordinal()]; spot++) {
+				parkingTypes[spot] = parkingType;
+				availability.set(spot, FREE);
+			}
+		}
+	}
+
+	// kiosks without a database are single-site
+	@Override
+	public int getFacilityId() {
+		return Facility.DEFAULT_ID;
+	}
+
+	@Override
+	public int getNextAvailableSlot(ParkingType parkingType) {
+		for (int spot = firstSpots[parkingType.ordinal()]; spot <= lastSpots[parkingType.ordinal()]; spot++) {
+			if (availability.get(spot) == FREE) {
+				return spot;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int claimNextAvailableSlot(ParkingType parkingType) {
+		for (int spot = firstSpots[parkingType.ordinal()]; spot <= lastSpots[parkingType.ordinal()]; spot++) {
+			if (availability.compareAndSet(spot, FREE, TAKEN)) {
+				return spot;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean updateParking(ParkingSpot parkingSpot) {
+		if (!exists(parkingSpot.getId())) {
+			return false;
+		}
+		availability.set(parkingSpot.getId(), parkingSpot.isAvailable() ? FREE : TAKEN);
+		return true;
+	}
+
+	// Journaled events are applied here when they happen, there is nothing left to write
+	@Override
+	public boolean replayParking(ParkingSpot parkingSpot) {
+		return exists(parkingSpot.getId());
+	}
+
+	@Override
+	public int holdNextAvailableSlot(ParkingType parkingType) {
+		return claimNextAvailableSlot(parkingType);
+	}
+
+	@Override
+	public void releaseHold(int spotNumber) {
+	}
+
+	@Override
+	public void freeSlotLocally(ParkingSpot parkingSpot) {
+		updateParking(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), true));
+	}
+
+	@Override
+	public void resetParkingSpots() {
+		for (int spot = 1; spot < parkingTypes.length; spot++) {
+			availability.set(spot, FREE);
+		}
+	}
+
+	public int countSpots(ParkingType parkingType) {
+		return lastSpots[parkingType.ordinal()] - firstSpots[parkingType.ordinal()] + 1;
+	}
+
+	public int countAvailable(ParkingType parkingType) {
+		int count = 0;
+		for (int spot = firstSpots[parkingType.ordinal()]; spot <= lastSpots[parkingType.ordinal()]; spot++) {
+			count += availability.get(spot);
+		}
+		return count;
+	}
+
+	private boolean exists(int spotNumber) {
+		return spotNumber > 0 && spotNumber < parkingTypes.length;
+	}
+}
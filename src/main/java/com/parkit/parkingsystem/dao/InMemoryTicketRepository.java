@@ -0,0 +1,223 @@
+package com.parkit.parkingsystem.dao;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.parkit.parkingsystem.constants.Facility;
+import com.parkit.parkingsystem.model.ClosedTicketBatch;
+import com.parkit.parkingsystem.model.Ticket;
+
+// Tickets kept in concurrent maps for the life of the JVM. Stored tickets are never changed in
+// place, an update stores a new copy, and callers always get copies.
+public class InMemoryTicketRepository implements TicketRepository {
+
+	private final AtomicInteger lastId = new AtomicInteger();
+	private final ConcurrentNavigableMap<Integer, Ticket> tickets = new ConcurrentSkipListMap<>();
+	// per plate: ID of the latest and of the open ticket, number of tickets, tickets by in time
+	private final Map<String, Integer> latestTicketIds = new ConcurrentHashMap<>();
+	private final Map<String, Integer> openTicketIds = new ConcurrentHashMap<>();
+	private final Map<String, AtomicInteger> ticketCounts = new ConcurrentHashMap<>();
+	private final Map<String, ConcurrentNavigableMap<Long, Integer>> inTimes = new ConcurrentHashMap<>();
+	private final Map<String, Ticket> pendingTickets = new ConcurrentHashMap<>();
+
+	// kiosks without a database are single-site
+	@Override
+	public int getFacilityId() {
+		return Facility.DEFAULT_ID;
+	}
+
+	@Override
+	public boolean saveTicket(Ticket ticket) {
+		int id = lastId.incrementAndGet();
+		ticket.setId(id);
+		Ticket stored = TicketDAO.copyOf(ticket);
+		String vehicleRegNumber = stored.getVehicleRegNumber();
+		tickets.put(id, stored);
+		latestTicketIds.merge(vehicleRegNumber, id,
+				(current, saved) -> tickets.get(current).getInTimeMillis() > stored.getInTimeMillis() ? current : saved);
+		ticketCounts.computeIfAbsent(vehicleRegNumber, plate -> new AtomicInteger()).incrementAndGet();
+		inTimes.computeIfAbsent(vehicleRegNumber, plate -> new ConcurrentSkipListMap<>())
+				.merge(stored.getInTimeMillis(), 1, Integer::sum);
+		if (stored.getOutTimeMillis() == Ticket.NO_TIME) {
+			openTicketIds.put(vehicleRegNumber, id);
+			pendingTickets.computeIfPresent(vehicleRegNumber,
+					(plate, pending) -> pending.getInTimeMillis() == stored.getInTimeMillis() ? null : pending);
+		}
+		return true;
+	}
+
+	// Like the UPDATE_TICKET and CLOSE_TICKET statements, only the price and out time change and
+	// a closed ticket is not closed again
+	@Override
+	public boolean updateTicket(Ticket ticket) {
+		boolean closing = ticket.getOutTimeMillis() != Ticket.NO_TIME;
+		boolean[] applied = new boolean[1];
+		Ticket updated = tickets.computeIfPresent(ticket.getId(), (id, stored) -> {
+			if (closing && stored.getOutTimeMillis() != Ticket.NO_TIME) {
+				return stored;
+			}
+			Ticket copy = TicketDAO.copyOf(stored);
+			copy.setPriceInCents(ticket.getPriceInCents());
+			copy.setOutTimeMillis(ticket.getOutTimeMillis());
+			applied[0] = true;
+			return copy;
+		});
+		if (updated == null || !applied[0]) {
+			return false;
+		}
+		if (updated.getOutTimeMillis() != Ticket.NO_TIME) {
+			openTicketIds.remove(updated.getVehicleRegNumber(), updated.getId());
+		}
+		return true;
+	}
+
+	@Override
+	public CompletableFuture<Boolean> saveTicketAsync(Ticket ticket) {
+		return CompletableFuture.completedFuture(saveTicket(ticket));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> updateTicketAsync(Ticket ticket) {
+		return CompletableFuture.completedFuture(updateTicket(ticket));
+	}
+
+	@Override
+	public boolean isWriteBehind() {
+		return false;
+	}
+
+	@Override
+	public Ticket getTicket(String vehicleRegNumber) {
+		return find(latestTicketIds.get(vehicleRegNumber));
+	}
+
+	@Override
+	public Ticket getOpenTicket(String vehicleRegNumber) {
+		Ticket pending = pendingTickets.get(vehicleRegNumber);
+		return pending != null ? TicketDAO.copyOf(pending) : loadOpenTicket(vehicleRegNumber);
+	}
+
+	@Override
+	public Ticket loadOpenTicket(String vehicleRegNumber) {
+		return find(openTicketIds.get(vehicleRegNumber));
+	}
+
+	@Override
+	public void registerPendingTicket(Ticket ticket) {
+		pendingTickets.put(ticket.getVehicleRegNumber(), TicketDAO.copyOf(ticket));
+	}
+
+	@Override
+	public void forgetOpenTicket(String vehicleRegNumber) {
+		pendingTickets.remove(vehicleRegNumber);
+	}
+
+	@Override
+	public int getNbTicket(String vehicleRegNumber) {
+		AtomicInteger count = ticketCounts.get(vehicleRegNumber);
+		return count == null ? 0 : count.get();
+	}
+
+	@Override
+	public boolean getClosedTickets(long fromMillis, long toMillis, int afterId, ClosedTicketBatch batch) {
+		batch.clear();
+		for (Ticket ticket : tickets.tailMap(afterId, false).values()) {
+			if (batch.size() == batch.capacity()) {
+				break;
+			}
+			long outTime = ticket.getOutTimeMillis();
+			if (outTime != Ticket.NO_TIME && outTime >= fromMillis && outTime < toMillis) {
+				int previousVisits = 0;
+				for (int sameInTime : inTimes.get(ticket.getVehicleRegNumber()).headMap(ticket.getInTimeMillis())
+						.values()) {
+					previousVisits += sameInTime;
+				}
+				batch.add(ticket.getId(), ticket.getInTimeMillis(), outTime, ticket.getParkingSpot().getParkingType(),
+						previousVisits);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean streamClosedTickets(long fromMillis, long toMillis, TicketRowHandler handler) {
+		for (Ticket ticket : tickets.values()) {
+			long outTime = ticket.getOutTimeMillis();
+			if (outTime != Ticket.NO_TIME && outTime >= fromMillis && outTime < toMillis) {
+				handler.onTicket(ticket.getInTimeMillis(), outTime, ticket.getParkingSpot().getParkingType(),
+						ticket.getPriceInCents());
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean streamTicketsParkedAt(long millis, TicketRowHandler handler) {
+		for (Ticket ticket : tickets.values()) {
+			long outTime = ticket.getOutTimeMillis();
+			if (ticket.getInTimeMillis() < millis && (outTime == Ticket.NO_TIME || outTime >= millis)) {
+				handler.onTicket(ticket.getInTimeMillis(), outTime, ticket.getParkingSpot().getParkingType(),
+						ticket.getPriceInCents());
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean streamClosedTicketDetails(long fromMillis, long toMillis, ClosedTicketRowHandler handler) {
+		List<Ticket> closedTickets = new ArrayList<>();
+		for (Ticket ticket : tickets.values()) {
+			long outTime = ticket.getOutTimeMillis();
+			if (outTime != Ticket.NO_TIME && outTime >= fromMillis && outTime < toMillis) {
+				closedTickets.add(ticket);
+			}
+		}
+		closedTickets.sort(Comparator.comparingLong(Ticket::getOutTimeMillis));
+		for (Ticket ticket : closedTickets) {
+			handler.onTicket(ticket.getInTimeMillis(), ticket.getOutTimeMillis(), ticket.getVehicleRegNumber(),
+					ticket.getParkingSpot().getId(), ticket.getParkingSpot().getParkingType(), ticket.getPriceInCents());
+		}
+		return true;
+	}
+
+	@Override
+	public boolean updatePrices(ClosedTicketBatch batch) {
+		for (int i = 0; i < batch.size(); i++) {
+			long priceInCents = batch.getPriceInCents(i);
+			tickets.computeIfPresent(batch.getId(i), (id, stored) -> {
+				Ticket copy = TicketDAO.copyOf(stored);
+				copy.setPriceInCents(priceInCents);
+				return copy;
+			});
+		}
+		return true;
+	}
+
+	// the maps have a single tier
+	@Override
+	public int archiveClosedTickets(long beforeMillis, int limit) {
+		return 0;
+	}
+
+	@Override
+	public void deleteAllTickets() {
+		tickets.clear();
+		latestTicketIds.clear();
+		openTicketIds.clear();
+		ticketCounts.clear();
+		inTimes.clear();
+		pendingTickets.clear();
+	}
+
+	private Ticket find(Integer id) {
+		Ticket stored = id == null ? null : tickets.get(id);
+		return stored == null ? null : TicketDAO.copyOf(stored);
+	}
+}
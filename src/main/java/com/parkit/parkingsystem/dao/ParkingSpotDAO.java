@@ -3,25 +3,167 @@ package com.parkit.parkingsystem.dao;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.Facility;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
 import com.parkit.parkingsystem.model.ParkingSpot;
 
-public class ParkingSpotDAO {
+public class ParkingSpotDAO implements ParkingSpotRepository {
 	private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
+	private static final LatencyHistogram loadAvailabilityLatency = latency("loadAvailability");
+	private static final LatencyHistogram getNextAvailableSlotLatency = latency("getNextAvailableSlot");
+	private static final LatencyHistogram claimNextAvailableSlotLatency = latency("claimNextAvailableSlot");
+	private static final LatencyHistogram updateParkingLatency = latency("updateParking");
+	private static final LongAdder errors = Metrics.counter("parkit_dao_errors_total{dao=\"parking_spot\"}");
+
 	public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+	// the DAO only sees the spots of this facility
+	private final int facilityId;
+	private volatile ParkingSpotIndex parkingSpotIndex;
+	// number of spots per type as of the last availability read, for the occupancy gauges
+	private volatile Map<ParkingType, Integer> spotCounts = new EnumMap<>(ParkingType.class);
+	private ScheduledExecutorService reconciliationExecutor;
+
 	public ParkingSpotDAO(DataBaseConfig dataBaseConfig) {
+		this(dataBaseConfig, Facility.DEFAULT_ID);
+	}
+
+	public ParkingSpotDAO(DataBaseConfig dataBaseConfig, int facilityId) {
 		this.dataBaseConfig = dataBaseConfig;
+		this.facilityId = facilityId;
+	}
+
+	public int getFacilityId() {
+		return facilityId;
+	}
+
+	// Loads the free spots in memory so that lookups no longer query the parking table.
+	// The index is kept up to date by this DAO's writes and reloaded from the DB periodically
+	// to pick up changes made by other processes.
+	public synchronized void startSpotIndex(long reconciliationIntervalMillis) {
+		if (parkingSpotIndex != null) {
+			return;
+		}
+		Map<ParkingType, BitSet> availability = loadAvailability();
+		if (availability == null) {
+			logger.error("Unable to load parking spot index, falling back to DB lookups");
+			return;
+		}
+		parkingSpotIndex = new ParkingSpotIndex(availability);
+		reconciliationExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "parking-spot-index-reconciliation");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reconciliationExecutor.scheduleWithFixedDelay(this::reconcileSpotIndex, reconciliationIntervalMillis,
+				reconciliationIntervalMillis, TimeUnit.MILLISECONDS);
+		for (ParkingType parkingType : ParkingType.values()) {
+			Metrics.gauge(freeSpotsGauge(parkingType), () -> countFreeSpots(parkingType));
+			Metrics.gauge(occupiedSpotsGauge(parkingType),
+					() -> spotCounts.getOrDefault(parkingType, 0) - countFreeSpots(parkingType));
+		}
+	}
+
+	public synchronized void stopSpotIndex() {
+		if (reconciliationExecutor != null) {
+			reconciliationExecutor.shutdownNow();
+			reconciliationExecutor = null;
+		}
+		parkingSpotIndex = null;
+		for (ParkingType parkingType : ParkingType.values()) {
+			Metrics.removeGauge(freeSpotsGauge(parkingType));
+			Metrics.removeGauge(occupiedSpotsGauge(parkingType));
+		}
+	}
+
+	private int countFreeSpots(ParkingType parkingType) {
+		ParkingSpotIndex index = parkingSpotIndex;
+		return index == null ? 0 : index.countAvailable(parkingType);
+	}
+
+	private String freeSpotsGauge(ParkingType parkingType) {
+		return "parkit_parking_spots_free{facility=\"" + facilityId + "\",type=\"" + parkingType + "\"}";
+	}
+
+	private String occupiedSpotsGauge(ParkingType parkingType) {
+		return "parkit_parking_spots_occupied{facility=\"" + facilityId + "\",type=\"" + parkingType + "\"}";
+	}
+
+	public ParkingSpotIndex getSpotIndex() {
+		return parkingSpotIndex;
+	}
+
+	public void reconcileSpotIndex() {
+		ParkingSpotIndex index = parkingSpotIndex;
+		if (index == null) {
+			return;
+		}
+		long version = index.getVersion();
+		Map<ParkingType, BitSet> availability = loadAvailability();
+		if (availability != null && !index.reloadIfUnchanged(availability, version)) {
+			// a write went through while reading, the next run will catch up
+			logger.info("Parking spot index changed during reconciliation, skipping this run");
+		}
+	}
+
+	private Map<ParkingType, BitSet> loadAvailability() {
+		long start = System.nanoTime();
+		Connection con = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+			ps.setInt(1, facilityId);
+			rs = ps.executeQuery();
+			Map<ParkingType, BitSet> availability = new EnumMap<>(ParkingType.class);
+			Map<ParkingType, Integer> counts = new EnumMap<>(ParkingType.class);
+			for (ParkingType parkingType : ParkingType.values()) {
+				availability.put(parkingType, new BitSet());
+			}
+			while (rs.next()) {
+				ParkingType parkingType = ParkingType.valueOf(rs.getString(3));
+				availability.get(parkingType).set(rs.getInt(1), rs.getBoolean(2));
+				counts.merge(parkingType, 1, Integer::sum);
+			}
+			spotCounts = counts;
+			return availability;
+		} catch (Exception ex) {
+			errors.increment();
+			logger.error("Error loading parking spot availability", ex);
+			return null;
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+			loadAvailabilityLatency.recordSince(start);
+		}
 	}
 
 	public int getNextAvailableSlot(ParkingType parkingType) {
+		long start = System.nanoTime();
+		ParkingSpotIndex index = parkingSpotIndex;
+		if (index != null) {
+			int spotNumber = index.getNextAvailableSpot(parkingType);
+			getNextAvailableSlotLatency.recordSince(start);
+			return spotNumber;
+		}
 		Connection con = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
@@ -30,22 +172,116 @@ public class ParkingSpotDAO {
 			con = dataBaseConfig.getConnection();
 			ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
 			ps.setString(1, parkingType.toString());
+			ps.setInt(2, facilityId);
 			rs = ps.executeQuery();
 			if (rs.next()) {
 				result = rs.getInt(1);
 				;
 			}
 		} catch (Exception ex) {
+			errors.increment();
 			logger.error("Error fetching next available slot", ex);
 		} finally {
 			dataBaseConfig.closeResultSet(rs);
 			dataBaseConfig.closePreparedStatement(ps);
 			dataBaseConfig.closeConnection(con);
+			getNextAvailableSlotLatency.recordSince(start);
 		}
 		return result;
 	}
 
+	// Finds a free spot and marks it as taken with a compare-and-set on AVAILABLE, so two gates
+	// can never get the same spot. Returns the claimed spot number or -1 if none is left.
+	public int claimNextAvailableSlot(ParkingType parkingType) {
+		long start = System.nanoTime();
+		Connection con = null;
+		PreparedStatement findPs = null;
+		PreparedStatement claimPs = null;
+		ResultSet rs = null;
+		ParkingSpotIndex index = parkingSpotIndex;
+		try {
+			con = dataBaseConfig.getConnection();
+			findPs = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT_AFTER);
+			claimPs = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+			findPs.setString(1, parkingType.toString());
+			findPs.setInt(3, facilityId);
+			claimPs.setInt(2, facilityId);
+			int candidate = 0;
+			while (true) {
+				// only look past the spot we lost, a snapshot read could keep returning it
+				if (index != null) {
+					candidate = index.getNextAvailableSpotAfter(parkingType, candidate);
+				} else {
+					findPs.setInt(2, candidate);
+					rs = findPs.executeQuery();
+					candidate = rs.next() ? rs.getInt(1) : 0;
+					dataBaseConfig.closeResultSet(rs);
+					rs = null;
+				}
+				if (candidate <= 0) {
+					return -1;
+				}
+				claimPs.setInt(1, candidate);
+				if (claimPs.executeUpdate() == 1) {
+					writeThrough(parkingType, candidate, false);
+					return candidate;
+				}
+				// another gate took this spot first, try the next one
+				if (index != null) {
+					index.setAvailable(parkingType, candidate, false);
+				}
+			}
+		} catch (Exception ex) {
+			errors.increment();
+			logger.error("Error claiming next available slot", ex);
+			return -1;
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(claimPs);
+			dataBaseConfig.closePreparedStatement(findPs);
+			dataBaseConfig.closeConnection(con);
+			claimNextAvailableSlotLatency.recordSince(start);
+		}
+	}
+
 	public boolean updateParking(ParkingSpot parkingSpot) {
+		return writeParking(parkingSpot, true);
+	}
+
+	// For gate journal replay: the spot index already reflects the journaled events, which can be
+	// ahead of the record being replayed, so the DB is updated alone
+	public boolean replayParking(ParkingSpot parkingSpot) {
+		return writeParking(parkingSpot, false);
+	}
+
+	// Journaled entries take their spot from the index, the DB is updated when they are replayed.
+	// Returns the spot number, or -1 when none is left.
+	public int holdNextAvailableSlot(ParkingType parkingType) {
+		ParkingSpotIndex index = parkingSpotIndex;
+		if (index == null) {
+			throw new IllegalStateException("Journaled entries need the parking spot index");
+		}
+		int spotNumber = index.holdNextAvailableSpot(parkingType);
+		return spotNumber > 0 ? spotNumber : -1;
+	}
+
+	public void releaseHold(int spotNumber) {
+		ParkingSpotIndex index = parkingSpotIndex;
+		if (index != null) {
+			index.releaseHold(spotNumber);
+		}
+	}
+
+	// Frees the spot in the index only, for journaled exits and cancelled holds
+	public void freeSlotLocally(ParkingSpot parkingSpot) {
+		ParkingSpotIndex index = parkingSpotIndex;
+		if (index != null) {
+			index.setAvailable(parkingSpot.getParkingType(), parkingSpot.getId(), true);
+		}
+	}
+
+	private boolean writeParking(ParkingSpot parkingSpot, boolean updateIndex) {
+		long start = System.nanoTime();
 		Connection con = null;
 		PreparedStatement ps = null;
 		try {
@@ -53,24 +289,43 @@ public class ParkingSpotDAO {
 			ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
 			ps.setBoolean(1, parkingSpot.isAvailable());
 			ps.setInt(2, parkingSpot.getId());
+			ps.setInt(3, facilityId);
 			int updateRowCount = ps.executeUpdate();
 			dataBaseConfig.closePreparedStatement(ps);
+			if (updateRowCount == 1 && updateIndex) {
+				writeThrough(parkingSpot.getParkingType(), parkingSpot.getId(), parkingSpot.isAvailable());
+			}
 			return (updateRowCount == 1);
 		} catch (Exception ex) {
+			errors.increment();
 			logger.error("Error updating parking info", ex);
 			return false;
 		} finally {
 			dataBaseConfig.closePreparedStatement(ps);
 			dataBaseConfig.closeConnection(con);
+			updateParkingLatency.recordSince(start);
+		}
+	}
+
+	private void writeThrough(ParkingType parkingType, int spotNumber, boolean available) {
+		ParkingSpotIndex index = parkingSpotIndex;
+		if (index != null && parkingType != null) {
+			dataBaseConfig.afterCommit(() -> index.setAvailable(parkingType, spotNumber, available));
 		}
 	}
 
 	public void resetParkingSpots() {
 		try (Connection con = dataBaseConfig.getConnection();
-				PreparedStatement ps = con.prepareStatement("UPDATE parking SET available = true")) {
+				PreparedStatement ps = con.prepareStatement(DBConstants.RESET_PARKING_SPOTS)) {
+			ps.setInt(1, facilityId);
 			ps.executeUpdate();
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
+		reconcileSpotIndex();
+	}
+
+	private static LatencyHistogram latency(String operation) {
+		return Metrics.histogram("parkit_dao_seconds{dao=\"parking_spot\",operation=\"" + operation + "\"}");
 	}
 }
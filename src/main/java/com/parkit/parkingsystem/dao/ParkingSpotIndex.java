@@ -0,0 +1,86 @@
+package com.parkit.parkingsystem.dao;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+// In-memory copy of the AVAILABLE column: one bitmap per parking type, bit n set when spot n is free
+public class ParkingSpotIndex {
+
+	private final Map<ParkingType, BitSet> freeSpots = new EnumMap<>(ParkingType.class);
+	// bumped on every change so that a reload built from an older DB read can be detected
+	private long version;
+	// spots given to journaled entries that are not in the DB yet, by spot number: a reload
+	// keeps them taken until each entry holding them has been replayed
+	private final Map<Integer, Integer> holdCounts = new HashMap<>();
+
+	public ParkingSpotIndex(Map<ParkingType, BitSet> availability) {
+		load(availability);
+	}
+
+	public synchronized int getNextAvailableSpot(ParkingType parkingType) {
+		return getNextAvailableSpotAfter(parkingType, 0);
+	}
+
+	// Lowest free spot number strictly greater than the given one, or 0 when there is none
+	public synchronized int getNextAvailableSpotAfter(ParkingType parkingType, int spotNumber) {
+		BitSet spots = freeSpots.get(parkingType);
+		if (spots == null) {
+			return 0;
+		}
+		int next = spots.nextSetBit(spotNumber + 1);
+		return next < 0 ? 0 : next;
+	}
+
+	public synchronized void setAvailable(ParkingType parkingType, int spotNumber, boolean available) {
+		BitSet spots = freeSpots.computeIfAbsent(parkingType, type -> new BitSet());
+		spots.set(spotNumber, available);
+		version++;
+	}
+
+	// Takes the lowest free spot without going through the DB, returns 0 when there is none
+	public synchronized int holdNextAvailableSpot(ParkingType parkingType) {
+		int spotNumber = getNextAvailableSpot(parkingType);
+		if (spotNumber > 0) {
+			freeSpots.get(parkingType).clear(spotNumber);
+			holdCounts.merge(spotNumber, 1, Integer::sum);
+			version++;
+		}
+		return spotNumber;
+	}
+
+	public synchronized void releaseHold(int spotNumber) {
+		holdCounts.computeIfPresent(spotNumber, (spot, count) -> count > 1 ? count - 1 : null);
+	}
+
+	public synchronized int countAvailable(ParkingType parkingType) {
+		BitSet spots = freeSpots.get(parkingType);
+		return spots == null ? 0 : spots.cardinality();
+	}
+
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	// Replaces the whole index with a fresh DB read, unless it changed since that read started
+	public synchronized boolean reloadIfUnchanged(Map<ParkingType, BitSet> availability, long expectedVersion) {
+		if (version != expectedVersion) {
+			return false;
+		}
+		load(availability);
+		return true;
+	}
+
+	private void load(Map<ParkingType, BitSet> availability) {
+		freeSpots.clear();
+		for (Map.Entry<ParkingType, BitSet> entry : availability.entrySet()) {
+			BitSet spots = (BitSet) entry.getValue().clone();
+			holdCounts.keySet().forEach(spots::clear);
+			freeSpots.put(entry.getKey(), spots);
+		}
+		version++;
+	}
+}
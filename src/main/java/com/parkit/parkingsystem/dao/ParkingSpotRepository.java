@@ -0,0 +1,32 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+// Parking spot storage used by the services. ParkingSpotDAO keeps the spots in the DB,
+// InMemoryParkingSpotRepository in the JVM only. Spot numbers are positive, -1 means none.
+public interface ParkingSpotRepository {
+
+	// Facility whose spots the repository holds
+	int getFacilityId();
+
+	int getNextAvailableSlot(ParkingType parkingType);
+
+	// Takes a free spot so that no other caller can get it
+	int claimNextAvailableSlot(ParkingType parkingType);
+
+	boolean updateParking(ParkingSpot parkingSpot);
+
+	// Writes a spot change from the gate journal, which the local state already reflects
+	boolean replayParking(ParkingSpot parkingSpot);
+
+	// Takes a free spot for a journaled entry, until the entry is replayed
+	int holdNextAvailableSlot(ParkingType parkingType);
+
+	void releaseHold(int spotNumber);
+
+	// Frees the spot in the local state only, for journaled exits and cancelled holds
+	void freeSlotLocally(ParkingSpot parkingSpot);
+
+	void resetParkingSpots();
+}
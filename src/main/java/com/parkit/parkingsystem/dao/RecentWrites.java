@@ -0,0 +1,39 @@
+package com.parkit.parkingsystem.dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Plates written in the last windowMillis. Replicas may not have these writes yet, so reads of
+// these plates go to the primary. The window must be longer than the replication lag.
+public class RecentWrites {
+
+	// expired entries are purged once the map grows past this size
+	private static final int PURGE_THRESHOLD = 10000;
+
+	private final long windowMillis;
+	private final Map<String, Long> expiryByPlate = new ConcurrentHashMap<>();
+
+	public RecentWrites(long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	public void record(String vehicleRegNumber) {
+		long now = System.currentTimeMillis();
+		expiryByPlate.put(vehicleRegNumber, now + windowMillis);
+		if (expiryByPlate.size() > PURGE_THRESHOLD) {
+			expiryByPlate.values().removeIf(expiresAt -> expiresAt < now);
+		}
+	}
+
+	public boolean contains(String vehicleRegNumber) {
+		Long expiresAt = expiryByPlate.get(vehicleRegNumber);
+		if (expiresAt == null) {
+			return false;
+		}
+		if (expiresAt < System.currentTimeMillis()) {
+			expiryByPlate.remove(vehicleRegNumber, expiresAt);
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,144 @@
+package com.parkit.parkingsystem.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Number of tickets per vehicle registration number, bounded in size (least recently used plates
+// are dropped first) and in age (entries expire after the TTL and are reloaded from the DB)
+public class TicketCountCache {
+
+	private final int maxSize;
+	private final long ttlMillis;
+	private final LinkedHashMap<String, CountEntry> entries;
+	// source of the per-plate versions, bumped by every change a count read from the DB may have missed
+	private long clock;
+	// highest version of an entry that was dropped, the version of every plate without an entry
+	private long evictedVersion;
+
+	public TicketCountCache(int maxSize, long ttlMillis) {
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<String, CountEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CountEntry> eldest) {
+				if (size() <= TicketCountCache.this.maxSize) {
+					return false;
+				}
+				evictedVersion = Math.max(evictedVersion, eldest.getValue().version);
+				return true;
+			}
+		};
+	}
+
+	// Returns the cached count, or -1 when the plate is unknown or its entry expired
+	public synchronized int get(String vehicleRegNumber) {
+		CountEntry entry = entries.get(vehicleRegNumber);
+		if (entry == null || entry.count < 0) {
+			return -1;
+		}
+		if (entry.expiresAt < System.currentTimeMillis()) {
+			// the version is kept
+			entry.count = -1;
+			return -1;
+		}
+		return entry.count;
+	}
+
+	public synchronized void put(String vehicleRegNumber, int count) {
+		CountEntry entry = entryFor(vehicleRegNumber);
+		entry.count = count;
+		entry.expiresAt = System.currentTimeMillis() + ttlMillis;
+	}
+
+	// Version of the plate, taken before reading its count from the DB, see putIfUnchanged
+	public synchronized long stamp(String vehicleRegNumber) {
+		CountEntry entry = entries.get(vehicleRegNumber);
+		return entry == null ? evictedVersion : entry.version;
+	}
+
+	// Caches a count read from the DB unless the plate changed since the stamp was taken, the count
+	// may then be missing that change. The commits of tickets saved by this thread before the stamp
+	// are the exception: a count read in their unit of work already has them.
+	public synchronized boolean putIfUnchanged(String vehicleRegNumber, int count, long stamp) {
+		CountEntry entry = entries.get(vehicleRegNumber);
+		long version = entry == null ? evictedVersion : entry.version;
+		boolean ownCommitsOnly = entry != null && entry.lastWriter == Thread.currentThread()
+				&& entry.lastWriterSince <= stamp && entry.writeVersion <= stamp;
+		if (version != stamp && !ownCommitsOnly) {
+			return false;
+		}
+		put(vehicleRegNumber, count);
+		return true;
+	}
+
+	// A ticket of the plate was committed. Plates without a count are left alone, their next
+	// lookup reads the up to date count.
+	public synchronized void increment(String vehicleRegNumber) {
+		CountEntry entry = bump(vehicleRegNumber);
+		if (entry.count >= 0) {
+			entry.count++;
+		}
+	}
+
+	// A ticket of the plate is being written or removed, counts read so far may miss it
+	public synchronized void invalidate(String vehicleRegNumber) {
+		CountEntry entry = bump(vehicleRegNumber);
+		entry.count = -1;
+		entry.writeVersion = entry.version;
+	}
+
+	public synchronized void clear() {
+		evictedVersion = ++clock;
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		int size = 0;
+		for (CountEntry entry : entries.values()) {
+			if (entry.count >= 0) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	private CountEntry bump(String vehicleRegNumber) {
+		CountEntry entry = entryFor(vehicleRegNumber);
+		Thread writer = Thread.currentThread();
+		if (entry.lastWriter != writer) {
+			entry.lastWriter = writer;
+			entry.lastWriterSince = entry.version;
+		}
+		entry.version = ++clock;
+		return entry;
+	}
+
+	private CountEntry entryFor(String vehicleRegNumber) {
+		CountEntry entry = entries.get(vehicleRegNumber);
+		if (entry == null) {
+			entry = new CountEntry(evictedVersion);
+			entries.put(vehicleRegNumber, entry);
+		}
+		return entry;
+	}
+
+	private static final class CountEntry {
+		// -1 while unknown, the entry then only keeps the version
+		private int count = -1;
+		private long expiresAt;
+		private long version;
+		// version of the last invalidate
+		private long writeVersion;
+		// thread behind the latest changes, and the version before its first one
+		private Thread lastWriter;
+		private long lastWriterSince;
+
+		private CountEntry(long version) {
+			this.version = version;
+			this.writeVersion = version;
+			this.lastWriterSince = version;
+		}
+	}
+}
@@ -3,121 +3,600 @@ package com.parkit.parkingsystem.dao;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.Facility;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.model.ClosedTicketBatch;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 
-public class TicketDAO {
+public class TicketDAO implements TicketRepository {
 
 	private static final Logger logger = LogManager.getLogger("TicketDAO");
 
+	private static final LatencyHistogram saveTicketLatency = latency("saveTicket");
+	private static final LatencyHistogram getTicketLatency = latency("getTicket");
+	private static final LatencyHistogram getOpenTicketLatency = latency("getOpenTicket");
+	private static final LatencyHistogram loadOpenTicketLatency = latency("loadOpenTicket");
+	private static final LatencyHistogram updateTicketLatency = latency("updateTicket");
+	private static final LatencyHistogram getNbTicketLatency = latency("getNbTicket");
+	private static final LatencyHistogram getClosedTicketsLatency = latency("getClosedTickets");
+	private static final LatencyHistogram updatePricesLatency = latency("updatePrices");
+	private static final LatencyHistogram streamTicketsLatency = latency("streamTickets");
+	private static final LatencyHistogram archiveClosedTicketsLatency = latency("archiveClosedTickets");
+	// rows per round trip when streaming, MySQL streams row by row instead (see streamFetchSize)
+	private static final int STREAM_FETCH_SIZE = Integer.getInteger("parkit.db.streamFetchSize", 5000);
+	private static final LongAdder errors = Metrics.counter("parkit_dao_errors_total{dao=\"ticket\"}");
+
 	public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+	// the DAO only sees and writes the tickets of this facility
+	private final int facilityId;
+
+	private final TicketCountCache ticketCountCache = new TicketCountCache(
+			Integer.getInteger("parkit.ticketCountCache.maxSize", 10000),
+			Long.getLong("parkit.ticketCountCache.ttlMillis", 600000L));
+	// tickets without out time by plate, at most one per occupied spot
+	private final Map<String, Ticket> openTickets = new ConcurrentHashMap<>();
+	private volatile TicketWritePipeline writePipeline;
+	// plates whose reads must not go to a lagging replica
+	private final RecentWrites recentWrites = new RecentWrites(
+			Long.getLong("parkit.db.replica.readYourWritesMillis", 10000L));
+
 	public TicketDAO(DataBaseConfig dataBaseConfig) {
+		this(dataBaseConfig, Facility.DEFAULT_ID);
+	}
+
+	public TicketDAO(DataBaseConfig dataBaseConfig, int facilityId) {
 		this.dataBaseConfig = dataBaseConfig;
+		this.facilityId = facilityId;
+	}
+
+	public int getFacilityId() {
+		return facilityId;
 	}
 
 	public boolean saveTicket(Ticket ticket) {
+		long start = System.nanoTime();
 		Connection con = null;
 		PreparedStatement ps = null;
 		try {
 			con = dataBaseConfig.getConnection();
-			ps = con.prepareStatement(DBConstants.SAVE_TICKET);
+			ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
 			ps.setInt(1, ticket.getParkingSpot().getId());
 			ps.setString(2, ticket.getVehicleRegNumber());
-			ps.setDouble(3, ticket.getPrice());
-			ps.setTimestamp(4, new java.sql.Timestamp(ticket.getInTime().getTime()));
-			ps.setTimestamp(5,
-					(ticket.getOutTime() == null) ? null : (new java.sql.Timestamp(ticket.getOutTime().getTime())));
-			return ps.execute();
+			ps.setLong(3, ticket.getPriceInCents());
+			ps.setTimestamp(4, new java.sql.Timestamp(ticket.getInTimeMillis()));
+			ps.setTimestamp(5, (ticket.getOutTimeMillis() == Ticket.NO_TIME) ? null
+					: (new java.sql.Timestamp(ticket.getOutTimeMillis())));
+			ps.setInt(6, facilityId);
+			boolean saved = ps.executeUpdate() == 1;
+			if (saved) {
+				ticket.setFacilityId(facilityId);
+				try (ResultSet keys = ps.getGeneratedKeys()) {
+					if (keys.next()) {
+						ticket.setId(keys.getInt(1));
+					}
+				}
+				onTicketSaved(ticket);
+			}
+			return saved;
 		} catch (Exception ex) {
+			errors.increment();
 			logger.error("Error saving ticket ", ex);
 			return false;
 		} finally {
 			dataBaseConfig.closePreparedStatement(ps);
 			dataBaseConfig.closeConnection(con);
+			saveTicketLatency.recordSince(start);
+		}
+	}
+
+	// Optional write-behind: saveTicketAsync and updateTicketAsync then queue their writes and
+	// flush them in batches instead of running one statement on the caller's thread
+	public synchronized void startWritePipeline(int writerThreads, int queueCapacity, int batchSize,
+			long flushIntervalMillis) {
+		if (writePipeline == null) {
+			writePipeline = new TicketWritePipeline(dataBaseConfig, facilityId, writerThreads, queueCapacity,
+					batchSize, flushIntervalMillis);
+		}
+	}
+
+	// Flushes the queued writes before returning
+	public synchronized void stopWritePipeline() {
+		if (writePipeline != null) {
+			writePipeline.shutdown();
+			writePipeline = null;
 		}
 	}
 
+	public boolean isWriteBehind() {
+		return writePipeline != null;
+	}
+
+	// Completes with the saveTicket() result, right away when there is no write pipeline
+	public CompletableFuture<Boolean> saveTicketAsync(Ticket ticket) {
+		TicketWritePipeline pipeline = writePipeline;
+		if (pipeline == null) {
+			return CompletableFuture.completedFuture(saveTicket(ticket));
+		}
+		String vehicleRegNumber = ticket.getVehicleRegNumber();
+		Ticket openTicket = ticket.getOutTimeMillis() == Ticket.NO_TIME ? copyOf(ticket) : null;
+		// exits must find the ticket before it is flushed, they close it by plate meanwhile
+		if (openTicket != null) {
+			openTickets.put(vehicleRegNumber, openTicket);
+		}
+		ticketCountCache.invalidate(vehicleRegNumber);
+		return pipeline.insert(ticket).whenComplete((saved, error) -> {
+			ticketCountCache.invalidate(vehicleRegNumber);
+			recentWrites.record(vehicleRegNumber);
+			if (openTicket == null) {
+				return;
+			}
+			if (Boolean.TRUE.equals(saved)) {
+				openTickets.replace(vehicleRegNumber, openTicket, copyOf(ticket));
+			} else {
+				openTickets.remove(vehicleRegNumber, openTicket);
+			}
+		});
+	}
+
+	// Completes with the updateTicket() result, right away when there is no write pipeline
+	public CompletableFuture<Boolean> updateTicketAsync(Ticket ticket) {
+		TicketWritePipeline pipeline = writePipeline;
+		if (pipeline == null) {
+			return CompletableFuture.completedFuture(updateTicket(ticket));
+		}
+		String vehicleRegNumber = ticket.getVehicleRegNumber();
+		Ticket closedTicket = ticket.getOutTimeMillis() == Ticket.NO_TIME ? null
+				: openTickets.remove(vehicleRegNumber);
+		return pipeline.update(ticket).whenComplete((updated, error) -> {
+			recentWrites.record(vehicleRegNumber);
+			if (closedTicket != null && !Boolean.TRUE.equals(updated)) {
+				openTickets.putIfAbsent(vehicleRegNumber, closedTicket);
+			}
+		});
+	}
+
+	// Makes a ticket known as open before it is saved, used for journaled entries so that the
+	// exit can find it while the DB is behind
+	public void registerPendingTicket(Ticket ticket) {
+		openTickets.put(ticket.getVehicleRegNumber(), copyOf(ticket));
+	}
+
+	public void forgetOpenTicket(String vehicleRegNumber) {
+		openTickets.remove(vehicleRegNumber);
+	}
+
 	public Ticket getTicket(String vehicleRegNumber) {
+		long start = System.nanoTime();
 		Connection con = null;
+		try {
+			con = readConnection(vehicleRegNumber);
+			// archived tickets are older than those left in ticket, the archive is only read for
+			// plates not seen within the archive horizon
+			Ticket ticket = getLatestTicket(con, DBConstants.GET_TICKET, vehicleRegNumber);
+			return ticket != null ? ticket : getLatestTicket(con, DBConstants.GET_ARCHIVED_TICKET, vehicleRegNumber);
+		} catch (Exception ex) {
+			errors.increment();
+			logger.error("Error getting ticket", ex);
+			return null;
+		} finally {
+			dataBaseConfig.closeConnection(con);
+			getTicketLatency.recordSince(start);
+		}
+	}
+
+	private Ticket getLatestTicket(Connection con, String query, String vehicleRegNumber) throws SQLException {
 		PreparedStatement ps = null;
 		ResultSet rs = null;
-		Ticket ticket = null;
 		try {
-			con = dataBaseConfig.getConnection();
-			ps = con.prepareStatement(DBConstants.GET_TICKET);
+			ps = con.prepareStatement(query);
 			ps.setString(1, vehicleRegNumber);
+			ps.setInt(2, facilityId);
 			rs = ps.executeQuery();
-			if (rs.next()) {
-				ticket = new Ticket();
-				ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(2), ParkingType.valueOf(rs.getString(6)), false);
-				ticket.setId(rs.getInt(1));
-				ticket.setParkingSpot(parkingSpot);
-				ticket.setVehicleRegNumber(vehicleRegNumber);
-				ticket.setPrice(rs.getDouble(3));
-				ticket.setInTime(rs.getTimestamp(4));
-				ticket.setOutTime(rs.getTimestamp(5));
-			}
-			return ticket;
+			return rs.next() ? readTicket(rs, vehicleRegNumber) : null;
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+		}
+	}
+
+	// Ticket of the vehicle currently parked, or null. Served from memory for the tickets saved
+	// through this DAO until they are closed, others are read from the DB each time.
+	public Ticket getOpenTicket(String vehicleRegNumber) {
+		long start = System.nanoTime();
+		Ticket openTicket = openTickets.get(vehicleRegNumber);
+		if (openTicket != null) {
+			getOpenTicketLatency.recordSince(start);
+			return copyOf(openTicket);
+		}
+		try {
+			// not cached, it may be closed by another DAO on the same DB which this one never hears of
+			return loadOpenTicket(vehicleRegNumber);
 		} catch (Exception ex) {
-			logger.error("Error getting ticket", ex);
+			logger.error("Error getting open ticket", ex);
 			return null;
+		} finally {
+			getOpenTicketLatency.recordSince(start);
+		}
+	}
+
+	// Open ticket as stored in the DB, ignoring the tickets known in memory only. Errors are
+	// thrown so that callers can tell a missing ticket from an unreachable DB.
+	public Ticket loadOpenTicket(String vehicleRegNumber) throws ClassNotFoundException, SQLException {
+		long start = System.nanoTime();
+		Connection con = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			ps = con.prepareStatement(DBConstants.GET_OPEN_TICKET);
+			ps.setString(1, vehicleRegNumber);
+			ps.setInt(2, facilityId);
+			rs = ps.executeQuery();
+			return rs.next() ? readTicket(rs, vehicleRegNumber) : null;
+		} catch (ClassNotFoundException | SQLException ex) {
+			errors.increment();
+			throw ex;
 		} finally {
 			dataBaseConfig.closeResultSet(rs);
 			dataBaseConfig.closePreparedStatement(ps);
 			dataBaseConfig.closeConnection(con);
+			loadOpenTicketLatency.recordSince(start);
 		}
 	}
 
+	// Lookups go to the replica, unless the plate was written lately and the replica may not have
+	// the write yet
+	private Connection readConnection(String vehicleRegNumber) throws ClassNotFoundException, SQLException {
+		return recentWrites.contains(vehicleRegNumber) ? dataBaseConfig.getConnection()
+				: dataBaseConfig.getReadConnection();
+	}
+
+	private Ticket readTicket(ResultSet rs, String vehicleRegNumber) throws SQLException {
+		Ticket ticket = new Ticket();
+		ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(2), ParkingType.valueOf(rs.getString(6)), false);
+		parkingSpot.setFacilityId(facilityId);
+		ticket.setId(rs.getInt(1));
+		ticket.setFacilityId(facilityId);
+		ticket.setParkingSpot(parkingSpot);
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setPriceInCents(rs.getLong(3));
+		ticket.setInTime(rs.getTimestamp(4));
+		ticket.setOutTime(rs.getTimestamp(5));
+		return ticket;
+	}
+
+	// Callers change the tickets they get, the cached ones are never handed out
+	static Ticket copyOf(Ticket ticket) {
+		Ticket copy = new Ticket();
+		ParkingSpot parkingSpot = ticket.getParkingSpot();
+		copy.setId(ticket.getId());
+		if (parkingSpot != null) {
+			ParkingSpot spotCopy = new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(),
+					parkingSpot.isAvailable());
+			spotCopy.setFacilityId(parkingSpot.getFacilityId());
+			copy.setParkingSpot(spotCopy);
+		}
+		copy.setFacilityId(ticket.getFacilityId());
+		copy.setVehicleRegNumber(ticket.getVehicleRegNumber());
+		copy.setPriceInCents(ticket.getPriceInCents());
+		copy.setInTimeMillis(ticket.getInTimeMillis());
+		copy.setOutTimeMillis(ticket.getOutTimeMillis());
+		return copy;
+	}
+
 	public boolean updateTicket(Ticket ticket) {
+		long start = System.nanoTime();
 		Connection con = null;
 		PreparedStatement ps = null;
 		try {
 			con = dataBaseConfig.getConnection();
-			ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
-			ps.setDouble(1, ticket.getPrice());
-			ps.setTimestamp(2, new java.sql.Timestamp(ticket.getOutTime().getTime()));
+			boolean closing = ticket.getOutTimeMillis() != Ticket.NO_TIME;
+			// a ticket is closed once, a second exit finds no row
+			ps = con.prepareStatement(closing ? DBConstants.CLOSE_TICKET : DBConstants.UPDATE_TICKET);
+			ps.setLong(1, ticket.getPriceInCents());
+			ps.setTimestamp(2, new java.sql.Timestamp(ticket.getOutTimeMillis()));
 			ps.setInt(3, ticket.getId());
 			int rowsUpdated = ps.executeUpdate();
-			logger.info("Number of rows updated: " + rowsUpdated);
+			logger.debug("Number of rows updated: {}", rowsUpdated);
+			if (rowsUpdated == 1) {
+				recentWrites.record(ticket.getVehicleRegNumber());
+			}
+			String vehicleRegNumber = ticket.getVehicleRegNumber();
+			int ticketId = ticket.getId();
+			if (rowsUpdated == 1 && closing) {
+				dataBaseConfig.afterCommit(() -> forgetOpenTicket(vehicleRegNumber, ticketId));
+			} else if (closing) {
+				// closed elsewhere, the cached ticket is stale
+				forgetOpenTicket(vehicleRegNumber, ticketId);
+			}
 			return rowsUpdated == 1; // Return true if exactly one row was updated
 		} catch (Exception ex) {
+			errors.increment();
 			logger.error("Error updating ticket", ex);
 			return false;
 		} finally {
 			dataBaseConfig.closePreparedStatement(ps);
 			dataBaseConfig.closeConnection(con);
+			updateTicketLatency.recordSince(start);
 		}
 	}
 
+	private void forgetOpenTicket(String vehicleRegNumber, int ticketId) {
+		openTickets.computeIfPresent(vehicleRegNumber,
+				(plate, openTicket) -> openTicket.getId() == ticketId ? null : openTicket);
+	}
+
+	private void onTicketSaved(Ticket ticket) {
+		String vehicleRegNumber = ticket.getVehicleRegNumber();
+		recentWrites.record(vehicleRegNumber);
+		if (dataBaseConfig.isInTransaction()) {
+			// later reads in this unit of work must see the uncommitted ticket
+			ticketCountCache.invalidate(vehicleRegNumber);
+		}
+		Ticket openTicket = ticket.getOutTimeMillis() == Ticket.NO_TIME ? copyOf(ticket) : null;
+		dataBaseConfig.afterCommit(() -> {
+			ticketCountCache.increment(vehicleRegNumber);
+			if (openTicket != null) {
+				// a later visit registered before this one was saved stays the open ticket
+				openTickets.compute(vehicleRegNumber,
+						(plate, current) -> current != null && current.getId() == 0
+								&& current.getInTimeMillis() != openTicket.getInTimeMillis() ? current : openTicket);
+			}
+		});
+	}
+
 	public int getNbTicket(String vehicleRegNumber) {
+		long start = System.nanoTime();
+		int cachedCount = ticketCountCache.get(vehicleRegNumber);
+		if (cachedCount >= 0) {
+			getNbTicketLatency.recordSince(start);
+			return cachedCount;
+		}
+		// a ticket of the plate saved while the count is read, or a stale replica count, must not be cached
+		long stamp = ticketCountCache.stamp(vehicleRegNumber);
 		Connection con = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
 		int nbTickets = 0;
 		try {
-			con = dataBaseConfig.getConnection();
+			con = readConnection(vehicleRegNumber);
 			ps = con.prepareStatement(DBConstants.GET_NB_TICKET);
+			// tickets in ticket plus those counted in the archive summary
 			ps.setString(1, vehicleRegNumber);
+			ps.setInt(2, facilityId);
+			ps.setString(3, vehicleRegNumber);
+			ps.setInt(4, facilityId);
 			rs = ps.executeQuery();
 			if (rs.next()) {
 				nbTickets = rs.getInt(1);
 			}
+			int count = nbTickets;
+			dataBaseConfig.afterCommit(() -> ticketCountCache.putIfUnchanged(vehicleRegNumber, count, stamp));
 			return nbTickets;
 		} catch (Exception ex) {
+			errors.increment();
 			logger.error("Error fetching ticket count", ex);
 			return 0;
 		} finally {
 			dataBaseConfig.closeConnection(con);
 			dataBaseConfig.closeResultSet(rs);
 			dataBaseConfig.closePreparedStatement(ps);
+			getNbTicketLatency.recordSince(start);
+		}
+	}
+
+	// Fills the batch with the next closed tickets by ID, out time within [from, to). The previous
+	// visits are the earlier tickets of the plate, archived ones included, as counted by
+	// getNbTicket() at exit time. Returns false on error.
+	public boolean getClosedTickets(long fromMillis, long toMillis, int afterId, ClosedTicketBatch batch) {
+		long start = System.nanoTime();
+		Connection con = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		batch.clear();
+		try {
+			con = dataBaseConfig.getReadConnection();
+			ps = con.prepareStatement(DBConstants.GET_CLOSED_TICKETS_PAGE);
+			ps.setTimestamp(1, new java.sql.Timestamp(fromMillis));
+			ps.setTimestamp(2, new java.sql.Timestamp(toMillis));
+			ps.setInt(3, afterId);
+			ps.setInt(4, facilityId);
+			ps.setInt(5, batch.capacity());
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				batch.add(rs.getInt(1), rs.getTimestamp(2).getTime(), rs.getTimestamp(3).getTime(),
+						ParkingType.valueOf(rs.getString(4)), rs.getInt(5));
+			}
+			return true;
+		} catch (Exception ex) {
+			errors.increment();
+			logger.error("Error fetching closed tickets", ex);
+			batch.clear();
+			return false;
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+			getClosedTicketsLatency.recordSince(start);
+		}
+	}
+
+	public boolean streamClosedTickets(long fromMillis, long toMillis, TicketRowHandler handler) {
+		return streamTickets(DBConstants.STREAM_CLOSED_TICKETS, fromMillis, toMillis,
+				rs -> handler.onTicket(rs.getTimestamp(1).getTime(), rs.getTimestamp(2).getTime(),
+						ParkingType.valueOf(rs.getString(3)), rs.getLong(4)));
+	}
+
+	public boolean streamTicketsParkedAt(long millis, TicketRowHandler handler) {
+		return streamTickets(DBConstants.STREAM_TICKETS_PARKED_AT, millis, millis, rs -> {
+			java.sql.Timestamp outTime = rs.getTimestamp(2);
+			handler.onTicket(rs.getTimestamp(1).getTime(), outTime == null ? Ticket.NO_TIME : outTime.getTime(),
+					ParkingType.valueOf(rs.getString(3)), rs.getLong(4));
+		});
+	}
+
+	public boolean streamClosedTicketDetails(long fromMillis, long toMillis, ClosedTicketRowHandler handler) {
+		return streamTickets(DBConstants.STREAM_CLOSED_TICKET_DETAILS, fromMillis, toMillis,
+				rs -> handler.onTicket(rs.getTimestamp(1).getTime(), rs.getTimestamp(2).getTime(), rs.getString(5),
+						rs.getInt(6), ParkingType.valueOf(rs.getString(3)), rs.getLong(4)));
+	}
+
+	// Connector/J reads the whole result into memory unless the fetch size is Integer.MIN_VALUE, which
+	// streams it row by row. A positive fetch size would need useCursorFetch, which switches every
+	// connection of the pool to server-side prepared statements.
+	private static int streamFetchSize(Connection con) throws SQLException {
+		return "MySQL".equals(con.getMetaData().getDatabaseProductName()) ? Integer.MIN_VALUE : STREAM_FETCH_SIZE;
+	}
+
+	private interface RowReader {
+		void read(ResultSet rs) throws SQLException;
+	}
+
+	// Forward-only, read-only result set fetched a few rows at a time, so memory stays flat
+	// whatever the number of rows
+	private boolean streamTickets(String query, long firstMillis, long secondMillis, RowReader rowReader) {
+		long start = System.nanoTime();
+		Connection con = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			con = dataBaseConfig.getReadConnection();
+			ps = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(streamFetchSize(con));
+			// the same parameters for the ticket and the ticket_archive part of the query
+			for (int offset = 0; offset <= 3; offset += 3) {
+				ps.setTimestamp(offset + 1, new java.sql.Timestamp(firstMillis));
+				ps.setTimestamp(offset + 2, new java.sql.Timestamp(secondMillis));
+				ps.setInt(offset + 3, facilityId);
+			}
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				rowReader.read(rs);
+			}
+			return true;
+		} catch (Exception ex) {
+			errors.increment();
+			logger.error("Error streaming tickets", ex);
+			return false;
+		} finally {
+			dataBaseConfig.closeResultSet(rs);
+			dataBaseConfig.closePreparedStatement(ps);
+			dataBaseConfig.closeConnection(con);
+			streamTicketsLatency.recordSince(start);
+		}
+	}
+
+	// Writes the batch prices back in one JDBC batch and one transaction
+	public boolean updatePrices(ClosedTicketBatch batch) {
+		long start = System.nanoTime();
+		try {
+			return dataBaseConfig.inTransaction(() -> {
+				Connection con = null;
+				PreparedStatement ps = null;
+				try {
+					con = dataBaseConfig.getConnection();
+					ps = con.prepareStatement(DBConstants.UPDATE_TICKET_PRICE);
+					for (int i = 0; i < batch.size(); i++) {
+						ps.setLong(1, batch.getPriceInCents(i));
+						ps.setInt(2, batch.getId(i));
+						ps.addBatch();
+					}
+					ps.executeBatch();
+					return true;
+				} finally {
+					dataBaseConfig.closePreparedStatement(ps);
+					dataBaseConfig.closeConnection(con);
+				}
+			});
+		} catch (Exception ex) {
+			errors.increment();
+			logger.error("Error updating ticket prices", ex);
+			return false;
+		} finally {
+			updatePricesLatency.recordSince(start);
+		}
+	}
+
+	// Moves up to limit closed tickets with an out time before the given time to ticket_archive,
+	// in one transaction, and adds them to the archived count of their plate. Visit counts and
+	// cached counts stay the same. Returns how many were moved, -1 on error.
+	public int archiveClosedTickets(long beforeMillis, int limit) {
+		long start = System.nanoTime();
+		try {
+			return dataBaseConfig.inTransaction(() -> {
+				Connection con = null;
+				PreparedStatement ps = null;
+				ResultSet rs = null;
+				List<Integer> ids = new ArrayList<>();
+				Map<String, Integer> archivedPerPlate = new HashMap<>();
+				try {
+					con = dataBaseConfig.getConnection();
+					// locked until the commit, so an exit or a repricing can not change them meanwhile
+					ps = con.prepareStatement(DBConstants.GET_TICKETS_TO_ARCHIVE);
+					ps.setTimestamp(1, new java.sql.Timestamp(beforeMillis));
+					ps.setInt(2, facilityId);
+					ps.setInt(3, limit);
+					rs = ps.executeQuery();
+					while (rs.next()) {
+						ids.add(rs.getInt(1));
+						archivedPerPlate.merge(rs.getString(2), 1, Integer::sum);
+					}
+					if (ids.isEmpty()) {
+						return 0;
+					}
+					executeForIds(con, DBConstants.ARCHIVE_TICKET, ids);
+					executeForIds(con, DBConstants.DELETE_TICKET, ids);
+					try (PreparedStatement summary = con.prepareStatement(DBConstants.ADD_ARCHIVED_TICKETS)) {
+						for (Map.Entry<String, Integer> plate : archivedPerPlate.entrySet()) {
+							summary.setString(1, plate.getKey());
+							summary.setInt(2, plate.getValue());
+							summary.setInt(3, facilityId);
+							summary.addBatch();
+						}
+						summary.executeBatch();
+					}
+					return ids.size();
+				} finally {
+					dataBaseConfig.closeResultSet(rs);
+					dataBaseConfig.closePreparedStatement(ps);
+					dataBaseConfig.closeConnection(con);
+				}
+			});
+		} catch (Exception ex) {
+			errors.increment();
+			logger.error("Error archiving tickets", ex);
+			return -1;
+		} finally {
+			archiveClosedTicketsLatency.recordSince(start);
+		}
+	}
+
+	private static void executeForIds(Connection con, String query, List<Integer> ids) throws SQLException {
+		try (PreparedStatement ps = con.prepareStatement(query)) {
+			for (int id : ids) {
+				ps.setInt(1, id);
+				ps.addBatch();
+			}
+			ps.executeBatch();
 		}
 	}
 
@@ -127,8 +606,14 @@ public class TicketDAO {
 
 		try {
 			con = dataBaseConfig.getConnection();
-			ps = con.prepareStatement("TRUNCATE TABLE ticket");
-			ps.executeUpdate();
+			for (String table : new String[] { "ticket", "ticket_archive", "ticket_plate_summary" }) {
+				ps = con.prepareStatement("TRUNCATE TABLE " + table);
+				ps.executeUpdate();
+				dataBaseConfig.closePreparedStatement(ps);
+				ps = null;
+			}
+			ticketCountCache.clear();
+			openTickets.clear();
 		} catch (Exception ex) {
 			ex.printStackTrace();
 			logger.error("Error clearing all tickets ", ex);
@@ -137,4 +622,8 @@ public class TicketDAO {
 			dataBaseConfig.closeConnection(con);
 		}
 	}
+
+	private static LatencyHistogram latency(String operation) {
+		return Metrics.histogram("parkit_dao_seconds{dao=\"ticket\",operation=\"" + operation + "\"}");
+	}
 }
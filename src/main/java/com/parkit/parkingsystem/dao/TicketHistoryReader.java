@@ -0,0 +1,180 @@
+package com.parkit.parkingsystem.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+// Scans a history file written by TicketHistoryWriter. The footer is read when the file is opened,
+// a scan then maps only the row groups whose out time range meets the period, and decodes them
+// column by column straight from the mapping. Files larger than 2 GB are fine, one mapping is a
+// row group.
+public class TicketHistoryReader implements Closeable {
+
+	private static final ParkingType[] PARKING_TYPES = ParkingType.values();
+
+	private final FileChannel channel;
+	private final String[] dictionary;
+	private final long[] rowGroupOffsets;
+	private final int[] rowGroupLengths;
+	private final int[] rowGroupRows;
+	private final long[] minOutTimes;
+	private final long[] maxOutTimes;
+	private final long rowCount;
+
+	public TicketHistoryReader(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size < TicketHistoryWriter.HEADER_SIZE + TicketHistoryWriter.TRAILER_SIZE) {
+				throw new IOException("Not a ticket history file: " + file);
+			}
+			ByteBuffer header = read(0, TicketHistoryWriter.HEADER_SIZE);
+			ByteBuffer trailer = read(size - TicketHistoryWriter.TRAILER_SIZE, TicketHistoryWriter.TRAILER_SIZE);
+			if (header.getInt(0) != TicketHistoryWriter.MAGIC || trailer.getInt(8) != TicketHistoryWriter.MAGIC) {
+				throw new IOException("Not a ticket history file, or not completely written: " + file);
+			}
+			if (header.getInt(4) != TicketHistoryWriter.FORMAT_VERSION) {
+				throw new IOException("Unsupported ticket history format " + header.getInt(4) + ": " + file);
+			}
+			long footerOffset = trailer.getLong(0);
+			ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset,
+					size - TicketHistoryWriter.TRAILER_SIZE - footerOffset);
+			dictionary = new String[footer.getInt()];
+			byte[] plate = new byte[Short.MAX_VALUE];
+			for (int i = 0; i < dictionary.length; i++) {
+				int length = footer.getShort();
+				footer.get(plate, 0, length);
+				dictionary[i] = new String(plate, 0, length, StandardCharsets.UTF_8);
+			}
+			int rowGroups = footer.getInt();
+			rowGroupOffsets = new long[rowGroups];
+			rowGroupLengths = new int[rowGroups];
+			rowGroupRows = new int[rowGroups];
+			minOutTimes = new long[rowGroups];
+			maxOutTimes = new long[rowGroups];
+			long rows = 0;
+			for (int i = 0; i < rowGroups; i++) {
+				rowGroupOffsets[i] = footer.getLong();
+				rowGroupLengths[i] = footer.getInt();
+				rowGroupRows[i] = footer.getInt();
+				minOutTimes[i] = footer.getLong();
+				maxOutTimes[i] = footer.getLong();
+				rows += rowGroupRows[i];
+			}
+			rowCount = rows;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public int getRowGroupCount() {
+		return rowGroupOffsets.length;
+	}
+
+	// Row groups a scan of [from, to) reads, the others are skipped from the footer alone
+	public int getRowGroupsToScan(long fromMillis, long toMillis) {
+		int rowGroups = 0;
+		for (int i = 0; i < rowGroupOffsets.length; i++) {
+			if (overlaps(i, fromMillis, toMillis)) {
+				rowGroups++;
+			}
+		}
+		return rowGroups;
+	}
+
+	// Streams the tickets with an out time within [from, to) to the handler, returns their number
+	public long scan(long fromMillis, long toMillis, ClosedTicketRowHandler handler) throws IOException {
+		long matched = 0;
+		for (int i = 0; i < rowGroupOffsets.length; i++) {
+			if (overlaps(i, fromMillis, toMillis)) {
+				matched += scanRowGroup(i, fromMillis, toMillis, handler);
+			}
+		}
+		return matched;
+	}
+
+	private boolean overlaps(int rowGroup, long fromMillis, long toMillis) {
+		return maxOutTimes[rowGroup] >= fromMillis && minOutTimes[rowGroup] < toMillis;
+	}
+
+	private long scanRowGroup(int rowGroup, long fromMillis, long toMillis, ClosedTicketRowHandler handler)
+			throws IOException {
+		MappedByteBuffer group = channel.map(FileChannel.MapMode.READ_ONLY, rowGroupOffsets[rowGroup],
+				rowGroupLengths[rowGroup]);
+		int rows = group.getInt(0);
+		int outTimeBytes = group.getInt(4);
+		int inTimeBytes = group.getInt(8);
+		// the varint columns are read with cursors, the fixed width ones by index
+		ByteBuffer outTimeColumn = slice(group, TicketHistoryWriter.ROW_GROUP_HEADER_SIZE, outTimeBytes);
+		ByteBuffer inTimeColumn = slice(group, TicketHistoryWriter.ROW_GROUP_HEADER_SIZE + outTimeBytes,
+				inTimeBytes);
+		int plateColumn = TicketHistoryWriter.ROW_GROUP_HEADER_SIZE + outTimeBytes + inTimeBytes;
+		int spotColumn = plateColumn + rows * 4;
+		int typeColumn = spotColumn + rows * 4;
+		int priceColumn = typeColumn + rows;
+		long matched = 0;
+		long outTime = minOutTimes[rowGroup];
+		for (int row = 0; row < rows; row++) {
+			outTime += unzigzag(getVarint(outTimeColumn));
+			long parkedMillis = getVarint(inTimeColumn);
+			if (outTime >= fromMillis && outTime < toMillis) {
+				handler.onTicket(outTime - parkedMillis, outTime, dictionary[group.getInt(plateColumn + row * 4)],
+						group.getInt(spotColumn + row * 4), PARKING_TYPES[group.get(typeColumn + row)],
+						group.getLong(priceColumn + row * 8));
+				matched++;
+			}
+		}
+		return matched;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(length);
+		while (bytes.hasRemaining()) {
+			if (channel.read(bytes, position + bytes.position()) < 0) {
+				throw new IOException("Unexpected end of ticket history file");
+			}
+		}
+		bytes.flip();
+		return bytes;
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(offset);
+		duplicate.limit(offset + length);
+		return duplicate.slice();
+	}
+
+	private static long getVarint(ByteBuffer buffer) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
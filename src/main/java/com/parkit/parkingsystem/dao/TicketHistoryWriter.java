@@ -0,0 +1,246 @@
+package com.parkit.parkingsystem.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+// Writes closed tickets to a column-oriented history file, read back by TicketHistoryReader.
+// Rows are buffered into row groups of rowGroupSize tickets, each group is written column after
+// column through a large direct buffer. Rows should come sorted by out time, so that the time
+// range of each group is narrow and a reader skips the groups outside the period it scans.
+//
+// Header (8 bytes): magic, format version.
+// Row group: row count, byte length of the out time and in time columns, then the columns:
+//   out time  - zigzag varint delta from the previous out time, the first from the group minimum
+//   in time   - varint of the time parked, out time minus in time
+//   plate     - int index in the plate dictionary
+//   spot      - int parking number
+//   type      - byte ParkingType ordinal
+//   price     - long cents
+// Footer: plate dictionary (count, then length and UTF-8 bytes of each plate), row group index
+// (count, then offset, length, row count, min and max out time of each group).
+// Trailer (12 bytes): footer offset, magic.
+public class TicketHistoryWriter implements Closeable, ClosedTicketRowHandler {
+
+	static final int MAGIC = 0x50544831;
+	static final int FORMAT_VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int ROW_GROUP_HEADER_SIZE = 12;
+	static final int ROW_GROUP_INDEX_ENTRY_SIZE = 32;
+	static final int TRAILER_SIZE = 12;
+	// widest row: two 10-byte varints, plate, spot, type and price
+	private static final int MAX_ROW_SIZE = 10 + 10 + 4 + 4 + 1 + 8;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int rowGroupSize;
+
+	// row group being filled
+	private final long[] outTimes;
+	private final long[] inTimes;
+	private final int[] plates;
+	private final int[] parkingNumbers;
+	private final byte[] parkingTypes;
+	private final long[] pricesInCents;
+	private int rows;
+
+	private final Map<String, Integer> plateIds = new HashMap<>();
+	private final List<String> dictionary = new ArrayList<>();
+	private final List<long[]> rowGroupIndex = new ArrayList<>();
+	// bytes handed to the channel or still in the buffer
+	private long position;
+	private long rowCount;
+
+	public TicketHistoryWriter(Path file, int rowGroupSize, int bufferSize) throws IOException {
+		if (rowGroupSize < 1 || bufferSize < ROW_GROUP_INDEX_ENTRY_SIZE + MAX_ROW_SIZE) {
+			throw new IllegalArgumentException(
+					"Invalid row group size " + rowGroupSize + " or buffer size " + bufferSize);
+		}
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.rowGroupSize = rowGroupSize;
+		this.outTimes = new long[rowGroupSize];
+		this.inTimes = new long[rowGroupSize];
+		this.plates = new int[rowGroupSize];
+		this.parkingNumbers = new int[rowGroupSize];
+		this.parkingTypes = new byte[rowGroupSize];
+		this.pricesInCents = new long[rowGroupSize];
+		buffer.putInt(MAGIC);
+		buffer.putInt(FORMAT_VERSION);
+		position = HEADER_SIZE;
+	}
+
+	public void write(long inTime, long outTime, String vehicleRegNumber, int parkingNumber,
+			ParkingType parkingType, long priceInCents) throws IOException {
+		if (outTime < inTime) {
+			throw new IllegalArgumentException("Ticket of " + vehicleRegNumber + " leaves before it enters");
+		}
+		Integer plate = plateIds.get(vehicleRegNumber);
+		if (plate == null) {
+			plate = dictionary.size();
+			plateIds.put(vehicleRegNumber, plate);
+			dictionary.add(vehicleRegNumber);
+		}
+		outTimes[rows] = outTime;
+		inTimes[rows] = inTime;
+		plates[rows] = plate;
+		parkingNumbers[rows] = parkingNumber;
+		parkingTypes[rows] = (byte) parkingType.ordinal();
+		pricesInCents[rows] = priceInCents;
+		rows++;
+		rowCount++;
+		if (rows == rowGroupSize) {
+			writeRowGroup();
+		}
+	}
+
+	// Handler for TicketRepository.streamClosedTicketDetails, I/O errors are rethrown unchecked
+	@Override
+	public void onTicket(long inTime, long outTime, String vehicleRegNumber, int parkingNumber,
+			ParkingType parkingType, long priceInCents) {
+		try {
+			write(inTime, outTime, vehicleRegNumber, parkingNumber, parkingType, priceInCents);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	private void writeRowGroup() throws IOException {
+		long minOutTime = Long.MAX_VALUE;
+		long maxOutTime = Long.MIN_VALUE;
+		for (int i = 0; i < rows; i++) {
+			minOutTime = Math.min(minOutTime, outTimes[i]);
+			maxOutTime = Math.max(maxOutTime, outTimes[i]);
+		}
+		int outTimeBytes = 0;
+		int inTimeBytes = 0;
+		long previous = minOutTime;
+		for (int i = 0; i < rows; i++) {
+			outTimeBytes += varintSize(zigzag(outTimes[i] - previous));
+			inTimeBytes += varintSize(outTimes[i] - inTimes[i]);
+			previous = outTimes[i];
+		}
+		long offset = position;
+		ensure(ROW_GROUP_HEADER_SIZE);
+		buffer.putInt(rows);
+		buffer.putInt(outTimeBytes);
+		buffer.putInt(inTimeBytes);
+		previous = minOutTime;
+		for (int i = 0; i < rows; i++) {
+			ensure(10);
+			putVarint(zigzag(outTimes[i] - previous));
+			previous = outTimes[i];
+		}
+		for (int i = 0; i < rows; i++) {
+			ensure(10);
+			putVarint(outTimes[i] - inTimes[i]);
+		}
+		for (int i = 0; i < rows; i++) {
+			ensure(4);
+			buffer.putInt(plates[i]);
+		}
+		for (int i = 0; i < rows; i++) {
+			ensure(4);
+			buffer.putInt(parkingNumbers[i]);
+		}
+		for (int i = 0; i < rows; i++) {
+			ensure(1);
+			buffer.put(parkingTypes[i]);
+		}
+		for (int i = 0; i < rows; i++) {
+			ensure(8);
+			buffer.putLong(pricesInCents[i]);
+		}
+		long length = ROW_GROUP_HEADER_SIZE + outTimeBytes + inTimeBytes + rows * (4 + 4 + 1 + 8L);
+		position = offset + length;
+		rowGroupIndex.add(new long[] { offset, length, rows, minOutTime, maxOutTime });
+		rows = 0;
+	}
+
+	// Writes the last row group and the footer
+	@Override
+	public void close() throws IOException {
+		try {
+			if (rows > 0) {
+				writeRowGroup();
+			}
+			long footerOffset = position;
+			ensure(4);
+			buffer.putInt(dictionary.size());
+			for (String plate : dictionary) {
+				byte[] bytes = plate.getBytes(StandardCharsets.UTF_8);
+				ensure(2 + bytes.length);
+				buffer.putShort((short) bytes.length);
+				buffer.put(bytes);
+			}
+			ensure(4);
+			buffer.putInt(rowGroupIndex.size());
+			for (long[] rowGroup : rowGroupIndex) {
+				ensure(ROW_GROUP_INDEX_ENTRY_SIZE);
+				buffer.putLong(rowGroup[0]);
+				buffer.putInt((int) rowGroup[1]);
+				buffer.putInt((int) rowGroup[2]);
+				buffer.putLong(rowGroup[3]);
+				buffer.putLong(rowGroup[4]);
+			}
+			ensure(TRAILER_SIZE);
+			buffer.putLong(footerOffset);
+			buffer.putInt(MAGIC);
+			flush();
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void putVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int varintSize(long value) {
+		int size = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+}
@@ -0,0 +1,66 @@
+package com.parkit.parkingsystem.dao;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.parkit.parkingsystem.model.ClosedTicketBatch;
+import com.parkit.parkingsystem.model.Ticket;
+
+// Ticket storage used by the services. TicketDAO keeps the tickets in the DB,
+// InMemoryTicketRepository in the JVM only.
+public interface TicketRepository {
+
+	// Facility whose tickets the repository holds
+	int getFacilityId();
+
+	// Sets the ID of the ticket when it is saved
+	boolean saveTicket(Ticket ticket);
+
+	boolean updateTicket(Ticket ticket);
+
+	// Same as saveTicket() and updateTicket(), completed later when writes are batched
+	CompletableFuture<Boolean> saveTicketAsync(Ticket ticket);
+
+	CompletableFuture<Boolean> updateTicketAsync(Ticket ticket);
+
+	boolean isWriteBehind();
+
+	// Latest ticket of the vehicle, or null
+	Ticket getTicket(String vehicleRegNumber);
+
+	// Ticket of the vehicle currently parked, or null, also when the storage is unreachable
+	Ticket getOpenTicket(String vehicleRegNumber);
+
+	// Open ticket as stored, ignoring the pending ones. Throws when the storage is unreachable.
+	Ticket loadOpenTicket(String vehicleRegNumber) throws Exception;
+
+	// Makes a ticket known as open before it is saved
+	void registerPendingTicket(Ticket ticket);
+
+	void forgetOpenTicket(String vehicleRegNumber);
+
+	int getNbTicket(String vehicleRegNumber);
+
+	// Fills the batch with the next closed tickets by ID, out time within [from, to).
+	// Returns false on error.
+	boolean getClosedTickets(long fromMillis, long toMillis, int afterId, ClosedTicketBatch batch);
+
+	boolean updatePrices(ClosedTicketBatch batch);
+
+	// Streams the closed tickets with an out time within [from, to) to the handler, without
+	// creating Ticket objects. Returns false on error, the handler may have seen some rows then.
+	boolean streamClosedTickets(long fromMillis, long toMillis, TicketRowHandler handler);
+
+	// Same for the tickets entered before the given time and not gone before it
+	boolean streamTicketsParkedAt(long millis, TicketRowHandler handler);
+
+	// Closed tickets with an out time within [from, to) with their plate and spot, by out time.
+	// Returns false on error.
+	boolean streamClosedTicketDetails(long fromMillis, long toMillis, ClosedTicketRowHandler handler);
+
+	// Moves up to limit closed tickets with an out time before the given time out of the hot
+	// storage, they stay visible to the lookups, counts and reports. Returns how many were moved,
+	// -1 on error.
+	int archiveClosedTickets(long beforeMillis, int limit);
+
+	void deleteAllTickets();
+}
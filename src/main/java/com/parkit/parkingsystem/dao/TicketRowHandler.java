@@ -0,0 +1,9 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+// Receives streamed ticket rows as primitives, outTime is Ticket.NO_TIME for open tickets
+public interface TicketRowHandler {
+
+	void onTicket(long inTime, long outTime, ParkingType parkingType, long priceInCents);
+}
@@ -0,0 +1,296 @@
+package com.parkit.parkingsystem.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.Ticket;
+
+// Write-behind for ticket inserts and updates. Callers enqueue and get a future that completes
+// once the write is committed. Each writer thread owns a bounded queue and flushes it as one
+// transaction of JDBC batches every batchSize rows or flushIntervalMillis, whichever comes first.
+// All writes of a plate go to the same queue, so they reach the DB in the order they were made.
+public class TicketWritePipeline {
+
+	private static final Logger logger = LogManager.getLogger("TicketWritePipeline");
+	private static final int FLUSH_ATTEMPTS = 3;
+
+	private final DataBaseConfig dataBaseConfig;
+	private final int facilityId;
+	private final int batchSize;
+	private final long flushIntervalNanos;
+	private final List<BlockingQueue<PendingWrite>> queues = new ArrayList<>();
+	private final List<Thread> writers = new ArrayList<>();
+	private volatile boolean running = true;
+
+	public TicketWritePipeline(DataBaseConfig dataBaseConfig, int facilityId, int writerThreads, int queueCapacity,
+			int batchSize, long flushIntervalMillis) {
+		this.dataBaseConfig = dataBaseConfig;
+		this.facilityId = facilityId;
+		this.batchSize = batchSize;
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+		for (int i = 0; i < writerThreads; i++) {
+			BlockingQueue<PendingWrite> queue = new ArrayBlockingQueue<>(queueCapacity);
+			Thread writer = new Thread(() -> runWriter(queue), "ticket-writer-" + i);
+			writer.setDaemon(true);
+			queues.add(queue);
+			writers.add(writer);
+		}
+		writers.forEach(Thread::start);
+	}
+
+	// Blocks while the plate's queue is full, so bursts slow the gates down instead of
+	// growing without bound
+	public CompletableFuture<Boolean> insert(Ticket ticket) {
+		return enqueue(new PendingWrite(true, ticket));
+	}
+
+	// Tickets whose insert is still pending have no ID yet, they are closed by plate instead
+	public CompletableFuture<Boolean> update(Ticket ticket) {
+		return enqueue(new PendingWrite(false, ticket));
+	}
+
+	private CompletableFuture<Boolean> enqueue(PendingWrite write) {
+		if (!running) {
+			write.future.complete(false);
+			return write.future;
+		}
+		int stripe = (write.vehicleRegNumber.hashCode() & Integer.MAX_VALUE) % queues.size();
+		try {
+			queues.get(stripe).put(write);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			write.future.complete(false);
+		}
+		return write.future;
+	}
+
+	// Flushes what is queued and stops the writers, writes enqueued afterwards fail
+	public void shutdown() {
+		running = false;
+		for (Thread writer : writers) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		// writes that raced with the shutdown are failed rather than left hanging
+		List<PendingWrite> leftovers = new ArrayList<>();
+		queues.forEach(queue -> queue.drainTo(leftovers));
+		leftovers.forEach(write -> write.future.complete(false));
+	}
+
+	private void runWriter(BlockingQueue<PendingWrite> queue) {
+		List<PendingWrite> batch = new ArrayList<>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				PendingWrite first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + flushIntervalNanos;
+				while (batch.size() < batchSize) {
+					queue.drainTo(batch, batchSize - batch.size());
+					long remaining = deadline - System.nanoTime();
+					if (batch.size() >= batchSize || remaining <= 0 || !running) {
+						break;
+					}
+					PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				flush(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				flush(batch);
+				return;
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void flush(List<PendingWrite> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		boolean committed = false;
+		// writers commit concurrently and can hit lock conflicts, a failed flush is rolled back
+		// as a whole so it is safe to run again
+		for (int attempt = 1; attempt <= FLUSH_ATTEMPTS && !committed; attempt++) {
+			try {
+				dataBaseConfig.inTransaction(() -> {
+					writeBatch(batch);
+					return null;
+				});
+				committed = true;
+			} catch (Exception ex) {
+				logger.error("Error flushing {} ticket writes, attempt {}", batch.size(), attempt, ex);
+			}
+		}
+		if (!committed && batch.size() > 1) {
+			// one bad write must not fail the others flushed with it, each is tried on its own
+			for (PendingWrite write : batch) {
+				complete(write, flushAlone(write));
+			}
+			return;
+		}
+		for (PendingWrite write : batch) {
+			complete(write, committed);
+		}
+	}
+
+	private boolean flushAlone(PendingWrite write) {
+		write.applied = false;
+		write.generatedId = 0;
+		try {
+			dataBaseConfig.inTransaction(() -> {
+				writeBatch(Collections.singletonList(write));
+				return null;
+			});
+			return true;
+		} catch (Exception ex) {
+			logger.error("Error writing ticket of vehicle {}", write.vehicleRegNumber, ex);
+			return false;
+		}
+	}
+
+	private static void complete(PendingWrite write, boolean committed) {
+		if (committed && write.applied && write.generatedId > 0) {
+			write.ticket.setId(write.generatedId);
+		}
+		write.future.complete(committed && write.applied);
+	}
+
+	private void writeBatch(List<PendingWrite> batch) throws Exception {
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			// consecutive writes of the same kind go in one JDBC batch, in queue order
+			int start = 0;
+			while (start < batch.size()) {
+				int end = start;
+				boolean insert = batch.get(start).insert;
+				while (end < batch.size() && batch.get(end).insert == insert) {
+					end++;
+				}
+				if (insert) {
+					executeInserts(con, batch.subList(start, end));
+				} else {
+					executeUpdates(con, batch.subList(start, end));
+				}
+				start = end;
+			}
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	private void executeInserts(Connection con, List<PendingWrite> inserts) throws SQLException {
+		try (PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)) {
+			for (PendingWrite write : inserts) {
+				ps.setInt(1, write.parkingNumber);
+				ps.setString(2, write.vehicleRegNumber);
+				ps.setLong(3, write.priceInCents);
+				ps.setTimestamp(4, new java.sql.Timestamp(write.inTime));
+				ps.setTimestamp(5, write.outTime == Ticket.NO_TIME ? null : new java.sql.Timestamp(write.outTime));
+				ps.setInt(6, facilityId);
+				ps.addBatch();
+			}
+			markApplied(inserts, ps.executeBatch());
+			try (ResultSet keys = ps.getGeneratedKeys()) {
+				for (int i = 0; i < inserts.size() && keys.next(); i++) {
+					inserts.get(i).generatedId = keys.getInt(1);
+				}
+			} catch (SQLException e) {
+				// not every driver returns keys for batches, later updates then go by plate
+				logger.debug("Generated keys unavailable for batched ticket inserts", e);
+			}
+		}
+	}
+
+	private void executeUpdates(Connection con, List<PendingWrite> updates) throws SQLException {
+		List<PendingWrite> byId = new ArrayList<>();
+		List<PendingWrite> byPlate = new ArrayList<>();
+		for (PendingWrite write : updates) {
+			(write.ticketId > 0 ? byId : byPlate).add(write);
+		}
+		if (!byId.isEmpty()) {
+			try (PreparedStatement ps = con.prepareStatement(DBConstants.CLOSE_TICKET)) {
+				for (PendingWrite write : byId) {
+					ps.setLong(1, write.priceInCents);
+					ps.setTimestamp(2, new java.sql.Timestamp(write.outTime));
+					ps.setInt(3, write.ticketId);
+					ps.addBatch();
+				}
+				markApplied(byId, ps.executeBatch());
+			}
+		}
+		if (!byPlate.isEmpty()) {
+			try (PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_OPEN_TICKET_BY_PLATE)) {
+				for (PendingWrite write : byPlate) {
+					ps.setLong(1, write.priceInCents);
+					ps.setTimestamp(2, new java.sql.Timestamp(write.outTime));
+					ps.setString(3, write.vehicleRegNumber);
+					ps.setInt(4, facilityId);
+					ps.addBatch();
+				}
+				markApplied(byPlate, ps.executeBatch());
+			}
+		}
+	}
+
+	private static void markApplied(List<PendingWrite> writes, int[] updateCounts) {
+		for (int i = 0; i < writes.size(); i++) {
+			int count = i < updateCounts.length ? updateCounts[i] : Statement.EXECUTE_FAILED;
+			// rewritten MySQL batches report SUCCESS_NO_INFO instead of row counts
+			writes.get(i).applied = count == 1 || count == Statement.SUCCESS_NO_INFO;
+		}
+	}
+
+	// Ticket values are copied when the write is enqueued, later changes to the ticket are
+	// separate writes
+	private static final class PendingWrite {
+		private final boolean insert;
+		private final Ticket ticket;
+		private final int ticketId;
+		private final int parkingNumber;
+		private final String vehicleRegNumber;
+		private final long priceInCents;
+		private final long inTime;
+		private final long outTime;
+		private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+		private boolean applied;
+		private int generatedId;
+
+		private PendingWrite(boolean insert, Ticket ticket) {
+			this.insert = insert;
+			this.ticket = ticket;
+			this.ticketId = ticket.getId();
+			this.parkingNumber = ticket.getParkingSpot() == null ? 0 : ticket.getParkingSpot().getId();
+			this.vehicleRegNumber = ticket.getVehicleRegNumber();
+			this.priceInCents = ticket.getPriceInCents();
+			this.inTime = ticket.getInTimeMillis();
+			this.outTime = ticket.getOutTimeMillis();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Process wide registry of the metrics, looked up by name like the log4j loggers. Names follow
+// the Prometheus conventions (snake case, _seconds and _total suffixes, labels in braces) so that
+// the text from toText() can be scraped as is.
+public final class Metrics {
+
+	private static final double NANOS_PER_SECOND = 1e9;
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private static final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+	private static final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+	private static final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+	private Metrics() {
+	}
+
+	// Callers keep the result in a static field, the lookup is not meant for the hot path
+	public static LatencyHistogram histogram(String name) {
+		return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+	}
+
+	public static LongAdder counter(String name) {
+		return counters.computeIfAbsent(name, key -> new LongAdder());
+	}
+
+	// Replaces the gauge registered under this name, if any
+	public static void gauge(String name, LongSupplier value) {
+		gauges.put(name, value);
+	}
+
+	public static void removeGauge(String name) {
+		gauges.remove(name);
+	}
+
+	// Current value of every metric by sample name. Histograms are reported as summaries in
+	// seconds: quantiles, _count, _sum and _max.
+	public static Map<String, Number> snapshot() {
+		Map<String, Number> samples = new LinkedHashMap<>();
+		for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+			String name = entry.getKey();
+			LatencyHistogram histogram = entry.getValue();
+			for (double quantile : QUANTILES) {
+				samples.put(sampleName(name, "", "quantile=\"" + quantile + "\""),
+						histogram.getPercentileNanos(quantile * 100) / NANOS_PER_SECOND);
+			}
+			samples.put(sampleName(name, "_count", null), histogram.getCount());
+			samples.put(sampleName(name, "_sum", null), histogram.getSumNanos() / NANOS_PER_SECOND);
+			samples.put(sampleName(name, "_max", null), histogram.getMaxNanos() / NANOS_PER_SECOND);
+		}
+		for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+			samples.put(entry.getKey(), entry.getValue().sum());
+		}
+		for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+			samples.put(entry.getKey(), entry.getValue().getAsLong());
+		}
+		return samples;
+	}
+
+	// parkit_x_seconds{op="a"} with suffix _count and label q="1" gives parkit_x_seconds_count{op="a",q="1"}
+	private static String sampleName(String name, String suffix, String label) {
+		int labelsStart = name.indexOf('{');
+		String baseName = labelsStart < 0 ? name : name.substring(0, labelsStart);
+		String labels = labelsStart < 0 ? "" : name.substring(labelsStart + 1, name.length() - 1);
+		if (label != null) {
+			labels = labels.isEmpty() ? label : labels + "," + label;
+		}
+		return baseName + suffix + (labels.isEmpty() ? "" : "{" + labels + "}");
+	}
+
+	// One "name value" line per sample, the Prometheus text format without type hints
+	public static String toText() {
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, Number> sample : snapshot().entrySet()) {
+			text.append(sample.getKey()).append(' ').append(sample.getValue()).append('\n');
+		}
+		return text.toString();
+	}
+
+	// Clears recorded values, gauges stay registered
+	public static void reset() {
+		histograms.values().forEach(LatencyHistogram::reset);
+		counters.values().forEach(LongAdder::reset);
+	}
+}
@@ -0,0 +1,90 @@
+package com.parkit.parkingsystem.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+// Read-only MBean with one attribute per metric sample, named like in Metrics.toText(). The
+// attribute list follows the registry, metrics created later show up on the next getMBeanInfo().
+public class MetricsJmxExporter implements DynamicMBean {
+
+	private static final Logger logger = LogManager.getLogger("MetricsJmxExporter");
+
+	public static final String OBJECT_NAME = "com.parkit.parkingsystem:type=Metrics";
+
+	// Safe to call more than once
+	public static void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(new MetricsJmxExporter(), name);
+			}
+		} catch (JMException e) {
+			logger.error("Unable to register metrics MBean", e);
+		}
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Number value = Metrics.snapshot().get(attribute);
+		if (value == null) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		return value;
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Number> snapshot = Metrics.snapshot();
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			Number value = snapshot.get(attribute);
+			if (value != null) {
+				list.add(new Attribute(attribute, value));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		Map<String, Number> snapshot = Metrics.snapshot();
+		MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+		int i = 0;
+		for (Map.Entry<String, Number> sample : snapshot.entrySet()) {
+			attributes[i++] = new MBeanAttributeInfo(sample.getKey(), sample.getValue().getClass().getName(),
+					sample.getKey(), true, false, false);
+		}
+		return new MBeanInfo(getClass().getName(), "Parking system metrics", attributes, null, null, null);
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read-only");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		// what JMX clients expect for an unknown operation
+		throw new ReflectionException(new NoSuchMethodException(actionName), "No operations on metrics");
+	}
+}
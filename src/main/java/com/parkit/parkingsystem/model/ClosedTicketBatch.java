@@ -0,0 +1,78 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+// A chunk of closed tickets held in primitive arrays, reused from one chunk to the next
+public class ClosedTicketBatch {
+
+	private final int[] ids;
+	private final long[] inTimes;
+	private final long[] outTimes;
+	private final ParkingType[] parkingTypes;
+	private final int[] previousVisits;
+	private final long[] pricesInCents;
+	private int size;
+
+	public ClosedTicketBatch(int capacity) {
+		ids = new int[capacity];
+		inTimes = new long[capacity];
+		outTimes = new long[capacity];
+		parkingTypes = new ParkingType[capacity];
+		previousVisits = new int[capacity];
+		pricesInCents = new long[capacity];
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public void add(int id, long inTime, long outTime, ParkingType parkingType, int previousVisits) {
+		ids[size] = id;
+		inTimes[size] = inTime;
+		outTimes[size] = outTime;
+		parkingTypes[size] = parkingType;
+		this.previousVisits[size] = previousVisits;
+		pricesInCents[size] = 0;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return ids.length;
+	}
+
+	public int getLastId() {
+		return size == 0 ? 0 : ids[size - 1];
+	}
+
+	public int getId(int index) {
+		return ids[index];
+	}
+
+	public long getInTime(int index) {
+		return inTimes[index];
+	}
+
+	public long getOutTime(int index) {
+		return outTimes[index];
+	}
+
+	public ParkingType getParkingType(int index) {
+		return parkingTypes[index];
+	}
+
+	public int getPreviousVisits(int index) {
+		return previousVisits[index];
+	}
+
+	public long getPriceInCents(int index) {
+		return pricesInCents[index];
+	}
+
+	public void setPriceInCents(int index, long priceInCents) {
+		pricesInCents[index] = priceInCents;
+	}
+}
@@ -0,0 +1,54 @@
+package com.parkit.parkingsystem.model;
+
+import java.util.Date;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+// What a gate hands back to a vehicle that just entered
+public class EntryReceipt {
+
+	private final int ticketId;
+	private final String vehicleRegNumber;
+	private final int parkingNumber;
+	private final ParkingType parkingType;
+	private final long inTime;
+	private final boolean recurringUser;
+
+	public EntryReceipt(Ticket ticket, boolean recurringUser) {
+		this.ticketId = ticket.getId();
+		this.vehicleRegNumber = ticket.getVehicleRegNumber();
+		this.parkingNumber = ticket.getParkingSpot().getId();
+		this.parkingType = ticket.getParkingSpot().getParkingType();
+		this.inTime = ticket.getInTimeMillis();
+		this.recurringUser = recurringUser;
+	}
+
+	public int getTicketId() {
+		return ticketId;
+	}
+
+	public String getVehicleRegNumber() {
+		return vehicleRegNumber;
+	}
+
+	public int getParkingNumber() {
+		return parkingNumber;
+	}
+
+	public ParkingType getParkingType() {
+		return parkingType;
+	}
+
+	public long getInTimeMillis() {
+		return inTime;
+	}
+
+	public Date getInTime() {
+		return new Date(inTime);
+	}
+
+	// true when the vehicle already came before and gets the discount on exit
+	public boolean isRecurringUser() {
+		return recurringUser;
+	}
+}
@@ -0,0 +1,103 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+// Occupancy per hour and parking type, exits, dwell time and revenue per day, over a period
+// starting at fromMillis. Hours and days are counted from fromMillis. Exits, dwell time and
+// revenue are counted on the day of the exit.
+public class OccupancyReport {
+
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	private final long fromMillis;
+	private final int hours;
+	private final int days;
+	// index: parkingType.ordinal() * hours + hour
+	private final long[] occupiedMillis;
+	private final long[] exits;
+	private final long[] dwellMillis;
+	private final long[] revenueInCents;
+	private final long rows;
+	private final long elapsedMillis;
+	private final boolean complete;
+
+	public OccupancyReport(long fromMillis, int hours, int days, long[] occupiedMillis, long[] exits,
+			long[] dwellMillis, long[] revenueInCents, long rows, long elapsedMillis, boolean complete) {
+		this.fromMillis = fromMillis;
+		this.hours = hours;
+		this.days = days;
+		this.occupiedMillis = occupiedMillis;
+		this.exits = exits;
+		this.dwellMillis = dwellMillis;
+		this.revenueInCents = revenueInCents;
+		this.rows = rows;
+		this.elapsedMillis = elapsedMillis;
+		this.complete = complete;
+	}
+
+	public long getFromMillis() {
+		return fromMillis;
+	}
+
+	public int getHours() {
+		return hours;
+	}
+
+	public int getDays() {
+		return days;
+	}
+
+	public long getOccupiedMillis(ParkingType parkingType, int hour) {
+		return occupiedMillis[parkingType.ordinal() * hours + hour];
+	}
+
+	// Average number of occupied spots during the hour
+	public double getAverageOccupancy(ParkingType parkingType, int hour) {
+		return getOccupiedMillis(parkingType, hour) / (double) HOUR;
+	}
+
+	public long getExits(int day) {
+		return exits[day];
+	}
+
+	public long getRevenueInCents(int day) {
+		return revenueInCents[day];
+	}
+
+	public long getRevenueInCents() {
+		long total = 0;
+		for (long revenue : revenueInCents) {
+			total += revenue;
+		}
+		return total;
+	}
+
+	// 0 for a day without exits
+	public long getAverageDwellMillis(int day) {
+		return exits[day] == 0 ? 0 : dwellMillis[day] / exits[day];
+	}
+
+	public long getAverageDwellMillis() {
+		long totalExits = 0;
+		long totalDwell = 0;
+		for (int day = 0; day < days; day++) {
+			totalExits += exits[day];
+			totalDwell += dwellMillis[day];
+		}
+		return totalExits == 0 ? 0 : totalDwell / totalExits;
+	}
+
+	// tickets read from the storage
+	public long getRows() {
+		return rows;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	// false when a DB error stopped the report, the figures are then partial
+	public boolean isComplete() {
+		return complete;
+	}
+}
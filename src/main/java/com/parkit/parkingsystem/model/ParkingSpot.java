@@ -1,11 +1,13 @@
 package com.parkit.parkingsystem.model;
 
+import com.parkit.parkingsystem.constants.Facility;
 import com.parkit.parkingsystem.constants.ParkingType;
 
 public class ParkingSpot {
     private int number;
     private ParkingType parkingType;
     private boolean isAvailable;
+    private int facilityId = Facility.DEFAULT_ID;
 
     public ParkingSpot(int number, ParkingType parkingType, boolean isAvailable) {
         this.number = number;
@@ -29,6 +31,14 @@ public class ParkingSpot {
         this.parkingType = parkingType;
     }
 
+    public int getFacilityId() {
+        return facilityId;
+    }
+
+    public void setFacilityId(int facilityId) {
+        this.facilityId = facilityId;
+    }
+
     public boolean isAvailable() {
         return isAvailable;
     }
@@ -42,11 +52,11 @@ public class ParkingSpot {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ParkingSpot that = (ParkingSpot) o;
-        return number == that.number;
+        return number == that.number && facilityId == that.facilityId;
     }
 
     @Override
     public int hashCode() {
-        return number;
+        return 31 * facilityId + number;
     }
 }
@@ -0,0 +1,38 @@
+package com.parkit.parkingsystem.model;
+
+public class RepricingReport {
+
+	private final long rows;
+	private final long revenueInCents;
+	private final long elapsedMillis;
+	private final boolean complete;
+
+	public RepricingReport(long rows, long revenueInCents, long elapsedMillis, boolean complete) {
+		this.rows = rows;
+		this.revenueInCents = revenueInCents;
+		this.elapsedMillis = elapsedMillis;
+		this.complete = complete;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	// Sum of the new prices of the repriced tickets
+	public long getRevenueInCents() {
+		return revenueInCents;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	// false when the run stopped on a DB error, the rows already repriced stay committed
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public double getRowsPerSecond() {
+		return elapsedMillis == 0 ? rows : rows * 1000.0 / elapsedMillis;
+	}
+}
@@ -2,13 +2,23 @@ package com.parkit.parkingsystem.model;
 
 import java.util.Date;
 
+import com.parkit.parkingsystem.constants.Facility;
+
 public class Ticket {
+	// value of the time fields while they are not set
+	public static final long NO_TIME = Long.MIN_VALUE;
+	// width of the VEHICLE_REG_NUMBER columns
+	public static final int MAX_VEHICLE_REG_NUMBER_LENGTH = 10;
+
 	private int id;
+	private int facilityId = Facility.DEFAULT_ID;
 	private ParkingSpot parkingSpot;
 	private String vehicleRegNumber;
-	private double price;
-	private Date inTime;
-	private Date outTime;
+	// fixed-point money, sums of many tickets stay exact
+	private long priceInCents;
+	// epoch millis, kept as primitives so that reading them allocates nothing
+	private long inTime = NO_TIME;
+	private long outTime = NO_TIME;
 
 	public int getId() {
 		return id;
@@ -18,6 +28,14 @@ public class Ticket {
 		this.id = id;
 	}
 
+	public int getFacilityId() {
+		return facilityId;
+	}
+
+	public void setFacilityId(int facilityId) {
+		this.facilityId = facilityId;
+	}
+
 	public ParkingSpot getParkingSpot() {
 		return parkingSpot;
 	}
@@ -34,27 +52,52 @@ public class Ticket {
 		this.vehicleRegNumber = vehicleRegNumber;
 	}
 
+	public long getPriceInCents() {
+		return priceInCents;
+	}
+
+	public void setPriceInCents(long priceInCents) {
+		this.priceInCents = priceInCents;
+	}
+
+	// Price in euros, for display
 	public double getPrice() {
-		return price;
+		return priceInCents / 100.0;
 	}
 
 	public void setPrice(double price) {
-		this.price = price;
+		this.priceInCents = Math.round(price * 100);
 	}
 
 	public Date getInTime() {
-		return (inTime == null) ? null : (Date) inTime.clone();
+		return (inTime == NO_TIME) ? null : new Date(inTime);
 	}
 
 	public void setInTime(Date inTime) {
-		this.inTime = (inTime == null) ? null : (Date) inTime.clone();
+		this.inTime = (inTime == null) ? NO_TIME : inTime.getTime();
+	}
+
+	public long getInTimeMillis() {
+		return inTime;
+	}
+
+	public void setInTimeMillis(long inTime) {
+		this.inTime = inTime;
 	}
 
 	public Date getOutTime() {
-		return (outTime == null) ? null : (Date) outTime.clone();
+		return (outTime == NO_TIME) ? null : new Date(outTime);
 	}
 
 	public void setOutTime(Date outTime) {
-		this.outTime = (outTime == null) ? null : (Date) outTime.clone();
+		this.outTime = (outTime == null) ? NO_TIME : outTime.getTime();
+	}
+
+	public long getOutTimeMillis() {
+		return outTime;
+	}
+
+	public void setOutTimeMillis(long outTime) {
+		this.outTime = outTime;
 	}
 }
@@ -4,74 +4,75 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
-import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
 import com.parkit.parkingsystem.model.Ticket;
 
 public class FareCalculatorService {
 
 	public DataBaseConfig dataBaseConfig = new DataBaseConfig();
-	private TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+	private TicketRepository ticketDAO = new TicketDAO(dataBaseConfig);
+	private final TariffEngine tariffEngine;
 
 	private static final Logger logger = LogManager.getLogger("FareCalculatorService");
+	private static final LatencyHistogram calculateFareLatency = Metrics.histogram("parkit_fare_calculation_seconds");
 
-	public FareCalculatorService(TicketDAO ticketDAO) {
+	public FareCalculatorService(TicketRepository ticketDAO) {
+		this(ticketDAO, TariffEngine.defaults());
+	}
+
+	public FareCalculatorService(TicketRepository ticketDAO, TariffEngine tariffEngine) {
 		this.ticketDAO = ticketDAO;
+		this.tariffEngine = tariffEngine;
 	}
 
 	public void calculateFare(Ticket ticket) {
-		calculateFare(ticket, false);
+		calculateFare(ticket, 0);
 	}
 
+	// A discount is the loyalty tier of a single previous visit
 	public double calculateFare(Ticket ticket, boolean discount) {
-		if ((ticket.getOutTime() == null)) {
-			throw new IllegalArgumentException("Out time provided is null:" + ticket.getOutTime().toString());
-		}
+		return calculateFare(ticket, discount ? 1 : 0);
+	}
 
-		if (ticket.getOutTime().before(ticket.getInTime())) {
-			throw new IllegalArgumentException(
-					"Out time provided is before in time, incorrect :" + ticket.getOutTime().toString());
+	public double calculateFare(Ticket ticket, int previousVisits) {
+		if (ticket.getOutTimeMillis() == Ticket.NO_TIME) {
+			throw new IllegalArgumentException("Out time provided is null");
 		}
-
-		// Get time in milliseconds
-		long inTimeInMillis = ticket.getInTime().getTime();
-		long outTimeInMillis = ticket.getOutTime().getTime();
-
-		long durationInMillis = outTimeInMillis - inTimeInMillis;
-
-		double durationInHours = (double) durationInMillis / (1000 * 60 * 60);
-
-		if (durationInMillis < (30 * 60 * 1000)) {
-			ticket.setPrice(0);
-			logger.info("Parking time less than 30 minutes. Free parking. ");
-			return 0.0;
+		if (ticket.getInTimeMillis() == Ticket.NO_TIME) {
+			throw new IllegalArgumentException("In time provided is null");
 		}
 
-		// rate per hour
-		double ratePerHour;
-		switch (ticket.getParkingSpot().getParkingType()) {
-		case CAR:
-			ratePerHour = Fare.CAR_RATE_PER_HOUR;
-			break;
-		case BIKE:
-			ratePerHour = Fare.BIKE_RATE_PER_HOUR;
-			break;
-		default:
-			throw new IllegalArgumentException("Unkown Parking Type");
-		}
+		long start = System.nanoTime();
+		long fareInCents = calculateFareInCents(ticket.getInTimeMillis(), ticket.getOutTimeMillis(),
+				ticket.getParkingSpot().getParkingType(), previousVisits);
+		double fare = fareInCents / 100.0;
 
-		// total cost of parking
-		double fare = durationInHours * ratePerHour;
-		if (discount) { // if boolean discount is true (regular user)
-			fare = fare * 0.95; // Regular user gets 5% discount
+		ticket.setPriceInCents(fareInCents);
+		calculateFareLatency.recordSince(start);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Fare calculated: {} for duration (minutes) : {} with previous visits : {}", fare,
+					(ticket.getOutTimeMillis() - ticket.getInTimeMillis()) / 60000, previousVisits);
 		}
+		return fare;
+	}
 
-		// Round fare to the nearest cent
-		fare = Math.round(fare * 100.0) / 100.0;
+	// Allocation free fare calculation on epoch millis, rounded half up to the nearest cent
+	public long calculateFareInCents(long inTimeMillis, long outTimeMillis, ParkingType parkingType,
+			boolean discount) {
+		return calculateFareInCents(inTimeMillis, outTimeMillis, parkingType, discount ? 1 : 0);
+	}
 
-		ticket.setPrice(fare);
-		logger.info("Fare calculated: " + fare + " or ticket getPrice calculated: " + ticket.getPrice()
-				+ " for duration (hours) : " + durationInHours + " with discount : " + discount);
-		return fare;
+	public long calculateFareInCents(long inTimeMillis, long outTimeMillis, ParkingType parkingType,
+			int previousVisits) {
+		return tariffEngine.calculateFareInCents(inTimeMillis, outTimeMillis, parkingType, previousVisits);
+	}
+
+	// Loyalty discount of the current tariff
+	public int discountPercent(int previousVisits) {
+		return tariffEngine.getTariff().discountPercent(previousVisits);
 	}
-}
\ No newline at end of file
+}
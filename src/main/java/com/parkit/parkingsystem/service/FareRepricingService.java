@@ -0,0 +1,116 @@
+package com.parkit.parkingsystem.service;
+
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.model.ClosedTicketBatch;
+import com.parkit.parkingsystem.model.RepricingReport;
+
+// Re-prices the closed tickets of a period after a tariff change. Tickets are read by ID in
+// chunks of primitive arrays, so memory stays flat whatever the number of tickets: while one
+// chunk is priced in parallel and written back, the next one is already being read.
+public class FareRepricingService {
+
+	private static final Logger logger = LogManager.getLogger("FareRepricingService");
+
+	private final TicketRepository ticketDAO;
+	private final FareCalculatorService fareCalculatorService;
+	private final int chunkSize;
+	private final int parallelism;
+
+	public FareRepricingService(TicketRepository ticketDAO, FareCalculatorService fareCalculatorService) {
+		this(ticketDAO, fareCalculatorService, Integer.getInteger("parkit.repricing.chunkSize", 10000),
+				Integer.getInteger("parkit.repricing.parallelism", Runtime.getRuntime().availableProcessors()));
+	}
+
+	public FareRepricingService(TicketRepository ticketDAO, FareCalculatorService fareCalculatorService, int chunkSize,
+			int parallelism) {
+		this.ticketDAO = ticketDAO;
+		this.fareCalculatorService = fareCalculatorService;
+		this.chunkSize = chunkSize;
+		this.parallelism = parallelism;
+	}
+
+	// Tickets whose out time is within [from, to)
+	public RepricingReport repriceClosedTickets(Date from, Date to) throws InterruptedException {
+		long fromMillis = from.getTime();
+		long toMillis = to.getTime();
+		long startTime = System.nanoTime();
+		long rows = 0;
+		long revenueInCents = 0;
+		ForkJoinPool pricingPool = new ForkJoinPool(parallelism);
+		ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "fare-repricing-reader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			ClosedTicketBatch current = new ClosedTicketBatch(chunkSize);
+			ClosedTicketBatch next = new ClosedTicketBatch(chunkSize);
+			if (!ticketDAO.getClosedTickets(fromMillis, toMillis, 0, current)) {
+				return report(rows, revenueInCents, startTime, false);
+			}
+			while (current.size() > 0) {
+				Future<Boolean> prefetch = null;
+				if (current.size() == chunkSize) {
+					int lastId = current.getLastId();
+					ClosedTicketBatch target = next;
+					prefetch = reader.submit(() -> ticketDAO.getClosedTickets(fromMillis, toMillis, lastId, target));
+				}
+				price(pricingPool, current);
+				if (!ticketDAO.updatePrices(current)) {
+					logger.error("Unable to write back prices of tickets up to ID {}", current.getLastId());
+					return report(rows, revenueInCents, startTime, false);
+				}
+				rows += current.size();
+				for (int i = 0; i < current.size(); i++) {
+					revenueInCents += current.getPriceInCents(i);
+				}
+				logger.debug("Repriced {} tickets so far", rows);
+				if (prefetch == null) {
+					break;
+				}
+				if (!prefetch.get()) {
+					return report(rows, revenueInCents, startTime, false);
+				}
+				ClosedTicketBatch done = current;
+				current = next;
+				next = done;
+			}
+			return report(rows, revenueInCents, startTime, true);
+		} catch (ExecutionException e) {
+			logger.error("Error while repricing tickets", e.getCause());
+			return report(rows, revenueInCents, startTime, false);
+		} finally {
+			reader.shutdownNow();
+			pricingPool.shutdown();
+		}
+	}
+
+	private void price(ForkJoinPool pricingPool, ClosedTicketBatch batch)
+			throws InterruptedException, ExecutionException {
+		// a parallel stream started from inside the pool runs its tasks on that pool
+		pricingPool.submit(() -> IntStream.range(0, batch.size()).parallel()
+				.forEach(i -> batch.setPriceInCents(i, fareCalculatorService.calculateFareInCents(batch.getInTime(i),
+						batch.getOutTime(i), batch.getParkingType(i), batch.getPreviousVisits(i)))))
+				.get();
+	}
+
+	private RepricingReport report(long rows, long revenueInCents, long startTime, boolean complete) {
+		RepricingReport report = new RepricingReport(rows, revenueInCents, (System.nanoTime() - startTime) / 1000000,
+				complete);
+		logger.info("Repriced {} tickets worth {} cents in {} ms ({} rows/s){}", report.getRows(),
+				report.getRevenueInCents(), report.getElapsedMillis(), Math.round(report.getRowsPerSecond()),
+				complete ? "" : ", stopped on error");
+		return report;
+	}
+}
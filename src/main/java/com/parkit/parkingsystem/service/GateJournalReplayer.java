@@ -0,0 +1,209 @@
+package com.parkit.parkingsystem.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.TransactionCallback;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+// Applies the gate journal to the DB in sequence order. Each record is replayed in its own
+// transaction and checked against the open ticket of the plate first, so a record that reached
+// the DB before a crash, but not the checkpoint, is not applied twice. A record that still fails
+// after maxAttempts replays is moved to the dead letter file so that it does not hold up the others.
+public class GateJournalReplayer {
+
+	private static final Logger logger = LogManager.getLogger("GateJournalReplayer");
+
+	private final GateJournal gateJournal;
+	private final ParkingSpotRepository parkingSpotDAO;
+	private final TicketRepository ticketDAO;
+	private final DataBaseConfig dataBaseConfig;
+	private Path deadLetterFile;
+	private int maxAttempts = Integer.MAX_VALUE;
+	private long failedSequence;
+	private int failedAttempts;
+	private Thread replayThread;
+	private volatile boolean running;
+
+	public GateJournalReplayer(GateJournal gateJournal, ParkingSpotRepository parkingSpotDAO,
+			TicketRepository ticketDAO, DataBaseConfig dataBaseConfig) {
+		this.gateJournal = gateJournal;
+		this.parkingSpotDAO = parkingSpotDAO;
+		this.ticketDAO = ticketDAO;
+		this.dataBaseConfig = dataBaseConfig;
+	}
+
+	// Without a dead letter file a failing record is retried until it goes through
+	public synchronized void setDeadLetterFile(Path deadLetterFile, int maxAttempts) {
+		this.deadLetterFile = deadLetterFile;
+		this.maxAttempts = maxAttempts;
+	}
+
+	// Replays in the background, waiting retryIntervalMillis after a failure before trying again
+	public synchronized void start(long retryIntervalMillis) {
+		if (replayThread != null) {
+			return;
+		}
+		running = true;
+		replayThread = new Thread(() -> {
+			while (running) {
+				try {
+					drain();
+					if (gateJournal.getPendingCount() > 0) {
+						Thread.sleep(retryIntervalMillis);
+					} else {
+						gateJournal.awaitAppend(gateJournal.getLastSequence(), retryIntervalMillis);
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}, "gate-journal-replayer");
+		replayThread.setDaemon(true);
+		replayThread.start();
+	}
+
+	public synchronized void stop() {
+		if (replayThread != null) {
+			running = false;
+			replayThread.interrupt();
+			try {
+				replayThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			replayThread = null;
+		}
+	}
+
+	// Replays the pending records and returns how many were applied or dead lettered, stopping at
+	// the first one that fails so that the order of the events is kept
+	public synchronized int drain() {
+		int replayed = 0;
+		long sequence = gateJournal.getReplayedSequence() + 1;
+		while (sequence <= gateJournal.getLastSequence()) {
+			GateJournal.Record record = gateJournal.read(sequence);
+			if (record == null) {
+				logger.error("Gate journal record {} is unreadable, replay stopped", sequence);
+				break;
+			}
+			try {
+				inUnitOfWork(() -> record.getEventType() == GateJournal.ENTRY ? replayEntry(record)
+						: replayExit(record));
+			} catch (Exception e) {
+				if (!giveUp(record, e)) {
+					break;
+				}
+			}
+			if (record.getEventType() == GateJournal.ENTRY) {
+				parkingSpotDAO.releaseHold(record.getParkingNumber());
+			}
+			gateJournal.markReplayed(sequence);
+			replayed++;
+			sequence++;
+		}
+		return replayed;
+	}
+
+	// Returns true once the record is in the dead letter file and can be skipped. Failures while
+	// the DB is unreachable are not counted, the record is not at fault.
+	private boolean giveUp(GateJournal.Record record, Exception e) {
+		long sequence = record.getSequence();
+		if (failedSequence != sequence) {
+			failedSequence = sequence;
+			failedAttempts = 0;
+		}
+		if (isDataBaseReachable()) {
+			failedAttempts++;
+		}
+		if (deadLetterFile == null || failedAttempts < maxAttempts) {
+			logger.error("Unable to replay gate journal record {}, will retry", sequence, e);
+			return false;
+		}
+		String line = sequence + "," + (record.getEventType() == GateJournal.ENTRY ? "ENTRY" : "EXIT") + ","
+				+ record.getVehicleRegNumber() + "," + record.getParkingType() + "," + record.getParkingNumber() + ","
+				+ record.getInTimeMillis() + "," + record.getOutTimeMillis() + "," + record.getPriceInCents() + "\n";
+		try {
+			Files.write(deadLetterFile, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+		} catch (IOException ioe) {
+			logger.error("Unable to dead letter gate journal record {}, will retry", sequence, ioe);
+			return false;
+		}
+		logger.error("Gate journal record {} failed {} times, moved to {}", sequence, failedAttempts, deadLetterFile,
+				e);
+		failedAttempts = 0;
+		return true;
+	}
+
+	private boolean isDataBaseReachable() {
+		if (dataBaseConfig == null) {
+			return true;
+		}
+		Connection con = null;
+		try {
+			con = dataBaseConfig.getConnection();
+			return con.isValid(1);
+		} catch (Exception e) {
+			return false;
+		} finally {
+			dataBaseConfig.closeConnection(con);
+		}
+	}
+
+	private Void replayEntry(GateJournal.Record record) throws Exception {
+		Ticket openTicket = ticketDAO.loadOpenTicket(record.getVehicleRegNumber());
+		if (openTicket != null && sameSecond(openTicket.getInTimeMillis(), record.getInTimeMillis())) {
+			return null;
+		}
+		ParkingSpot parkingSpot = new ParkingSpot(record.getParkingNumber(), record.getParkingType(), false);
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(parkingSpot);
+		ticket.setVehicleRegNumber(record.getVehicleRegNumber());
+		ticket.setPriceInCents(0);
+		ticket.setInTimeMillis(record.getInTimeMillis());
+		if (!parkingSpotDAO.replayParking(parkingSpot) || !ticketDAO.saveTicket(ticket)) {
+			throw new Exception("Unable to save entry of vehicle " + record.getVehicleRegNumber());
+		}
+		return null;
+	}
+
+	private Void replayExit(GateJournal.Record record) throws Exception {
+		Ticket ticket = ticketDAO.loadOpenTicket(record.getVehicleRegNumber());
+		if (ticket == null || !sameSecond(ticket.getInTimeMillis(), record.getInTimeMillis())) {
+			// already closed
+			return null;
+		}
+		ticket.setOutTimeMillis(record.getOutTimeMillis());
+		ticket.setPriceInCents(record.getPriceInCents());
+		ParkingSpot parkingSpot = new ParkingSpot(record.getParkingNumber(), record.getParkingType(), true);
+		if (!ticketDAO.updateTicket(ticket) || !parkingSpotDAO.replayParking(parkingSpot)) {
+			throw new Exception("Unable to save exit of vehicle " + record.getVehicleRegNumber());
+		}
+		return null;
+	}
+
+	// The journal keeps millis, a MySQL DATETIME whole seconds, truncated or rounded
+	private static boolean sameSecond(long savedMillis, long journaledMillis) {
+		return Math.abs(savedMillis - journaledMillis) < 1000;
+	}
+
+	private <T> T inUnitOfWork(TransactionCallback<T> work) throws Exception {
+		if (dataBaseConfig == null) {
+			return work.doInTransaction();
+		}
+		return dataBaseConfig.inTransaction(work);
+	}
+}
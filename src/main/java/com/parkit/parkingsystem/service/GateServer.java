@@ -0,0 +1,309 @@
+package com.parkit.parkingsystem.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.FacilityRouter;
+import com.parkit.parkingsystem.config.StorageConfig;
+import com.parkit.parkingsystem.constants.Facility;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.metrics.Metrics;
+import com.parkit.parkingsystem.metrics.MetricsJmxExporter;
+import com.parkit.parkingsystem.model.EntryReceipt;
+import com.parkit.parkingsystem.model.Ticket;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Headless front end for gate terminals, one HTTP request per operation:
+//   POST /entry?plate=AB123&type=CAR, POST /exit?plate=AB123, GET /quote?plate=AB123
+// Responses are plain text key=value lines. Requests are served by a fixed pool of worker
+// threads, so many terminals share one process and one connection pool.
+// GET /metrics returns the metrics in the Prometheus text format, for a local scraper.
+// Gates of several facilities can share the server, they add &facility=<id> to their requests.
+public class GateServer {
+
+	private static final Logger logger = LogManager.getLogger("GateServer");
+
+	private final Map<Integer, ParkingService> parkingServices;
+	private final HttpServer httpServer;
+	private final ExecutorService workers;
+
+	public GateServer(ParkingService parkingService, InetSocketAddress address, int workerThreads)
+			throws IOException {
+		this(Collections.singletonMap(Facility.DEFAULT_ID, parkingService), address, workerThreads);
+	}
+
+	// One ParkingService per facility, requests without facility go to the default one
+	public GateServer(Map<Integer, ParkingService> parkingServices, InetSocketAddress address, int workerThreads)
+			throws IOException {
+		this.parkingServices = parkingServices;
+		this.httpServer = HttpServer.create(address, 0);
+		AtomicInteger threadCounter = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+			Thread thread = new Thread(runnable, "gate-worker-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		httpServer.setExecutor(workers);
+		httpServer.createContext("/entry", exchange -> handle(exchange, "POST", this::entry));
+		httpServer.createContext("/exit", exchange -> handle(exchange, "POST", this::exit));
+		httpServer.createContext("/quote", exchange -> handle(exchange, "GET", this::quote));
+		httpServer.createContext("/metrics",
+				exchange -> handle(exchange, "GET", parameters -> new Response(200, Metrics.toText())));
+	}
+
+	public void start() {
+		httpServer.start();
+		logger.info("Gate server listening on {}", httpServer.getAddress());
+	}
+
+	public void stop() {
+		httpServer.stop(1);
+		workers.shutdown();
+		try {
+			workers.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int getPort() {
+		return httpServer.getAddress().getPort();
+	}
+
+	private Response entry(Map<String, String> parameters) throws Exception {
+		String type = parameters.get("type");
+		ParkingType parkingType;
+		try {
+			parkingType = ParkingType.valueOf(type == null ? "" : type.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			return new Response(400, "error=Unknown vehicle type " + type + "\n");
+		}
+		EntryReceipt receipt = parkingService(parameters).enter(requirePlate(parameters), parkingType);
+		return new Response(200, "plate=" + receipt.getVehicleRegNumber() + "\nspot=" + receipt.getParkingNumber()
+				+ "\ninTime=" + receipt.getInTimeMillis() + "\nrecurringUser=" + receipt.isRecurringUser() + "\n");
+	}
+
+	private Response exit(Map<String, String> parameters) throws Exception {
+		return pricedTicket(parkingService(parameters).exit(requirePlate(parameters)), parameters);
+	}
+
+	private Response quote(Map<String, String> parameters) throws Exception {
+		return pricedTicket(parkingService(parameters).quote(requirePlate(parameters)), parameters);
+	}
+
+	private static Response pricedTicket(Ticket ticket, Map<String, String> parameters) {
+		if (ticket == null) {
+			return new Response(404, "error=No open ticket for vehicle " + parameters.get("plate") + "\n");
+		}
+		return new Response(200, "plate=" + ticket.getVehicleRegNumber() + "\nspot=" + ticket.getParkingSpot().getId()
+				+ "\ninTime=" + ticket.getInTimeMillis() + "\noutTime=" + ticket.getOutTimeMillis() + "\nprice="
+				+ ticket.getPrice() + "\n");
+	}
+
+	private ParkingService parkingService(Map<String, String> parameters) {
+		String facility = parameters.get("facility");
+		ParkingService parkingService = null;
+		try {
+			parkingService = parkingServices
+					.get(facility == null ? Facility.DEFAULT_ID : Integer.parseInt(facility.trim()));
+		} catch (NumberFormatException e) {
+			// reported as unknown below
+		}
+		if (parkingService == null) {
+			throw new IllegalArgumentException(facility == null ? "Missing facility" : "Unknown facility " + facility);
+		}
+		return parkingService;
+	}
+
+	private static String requirePlate(Map<String, String> parameters) {
+		String plate = parameters.get("plate");
+		if (plate == null || plate.trim().isEmpty()) {
+			throw new IllegalArgumentException("Missing vehicle registration number");
+		}
+		return plate.trim();
+	}
+
+	private void handle(HttpExchange exchange, String method, Operation operation) throws IOException {
+		Response response;
+		try {
+			if (!method.equals(exchange.getRequestMethod())) {
+				response = new Response(405, "error=Use " + method + "\n");
+			} else {
+				response = operation.apply(parseQuery(exchange.getRequestURI().getRawQuery()));
+			}
+		} catch (IllegalArgumentException e) {
+			response = new Response(400, "error=" + e.getMessage() + "\n");
+		} catch (IllegalStateException e) {
+			response = new Response(409, "error=" + e.getMessage() + "\n");
+		} catch (Exception e) {
+			logger.error("Error processing {}", exchange.getRequestURI(), e);
+			response = new Response(500, "error=Internal error\n");
+		}
+		byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(response.status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+		Map<String, String> parameters = new HashMap<>();
+		if (query == null) {
+			return parameters;
+		}
+		for (String pair : query.split("&")) {
+			int separator = pair.indexOf('=');
+			if (separator > 0) {
+				parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+						URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+			}
+		}
+		return parameters;
+	}
+
+	// Wires the storage picked by -Dparkit.storage like InteractiveShell does and serves until
+	// the JVM stops. With -Dparkit.facilities, serves each listed facility from its own database,
+	// see FacilityRouter.
+	public static void launch() throws IOException {
+		if (System.getProperty("parkit.facilities") != null) {
+			launchFacilities();
+			return;
+		}
+		StorageConfig storageConfig = StorageConfig.fromSystemProperties();
+		TicketRepository ticketRepository = storageConfig.getTicketRepository();
+		ParkingSpotRepository parkingSpotRepository = storageConfig.getParkingSpotRepository();
+		DataBaseConfig dataBaseConfig = storageConfig.getDataBaseConfig();
+
+		ParkingService parkingService = new ParkingService(null, parkingSpotRepository, ticketRepository,
+				new FareCalculatorService(ticketRepository, TariffEngine.fromSystemProperties()),
+				new SystemDateService(), dataBaseConfig);
+		String journalFile = System.getProperty("parkit.journal.file");
+		GateJournal gateJournal = null;
+		GateJournalReplayer replayer = null;
+		if (journalFile != null && dataBaseConfig == null) {
+			// in-memory state is gone after a restart, replaying the journal into it would be wrong
+			logger.warn("Gate journal ignored, it needs the jdbc storage");
+		} else if (journalFile != null) {
+			gateJournal = new GateJournal(Paths.get(journalFile), Integer.getInteger("parkit.journal.capacity", 100000),
+					GateJournal.SyncPolicy.valueOf(System.getProperty("parkit.journal.sync", "EVERY_RECORD")),
+					Long.getLong("parkit.journal.syncIntervalMillis", 100L));
+			replayer = new GateJournalReplayer(gateJournal, parkingSpotRepository, ticketRepository, dataBaseConfig);
+			replayer.setDeadLetterFile(Paths.get(System.getProperty("parkit.journal.deadLetterFile", journalFile + ".dead")),
+					Integer.getInteger("parkit.journal.maxReplayAttempts", 10));
+			replayer.start(Long.getLong("parkit.journal.retryIntervalMillis", 1000L));
+			parkingService.setGateJournal(gateJournal);
+			Metrics.gauge("parkit_gate_journal_pending", gateJournal::getPendingCount);
+		}
+		TicketArchiver archiver = dataBaseConfig == null ? null : startArchiver(ticketRepository);
+		MetricsJmxExporter.register();
+		GateJournal journal = gateJournal;
+		GateJournalReplayer journalReplayer = replayer;
+		GateServer gateServer = new GateServer(parkingService,
+				new InetSocketAddress(System.getProperty("parkit.gate.host", "localhost"),
+						Integer.getInteger("parkit.gate.port", 8080)),
+				Integer.getInteger("parkit.gate.workerThreads", 32));
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			gateServer.stop();
+			if (archiver != null) {
+				archiver.stop();
+			}
+			if (journal != null) {
+				journalReplayer.stop();
+				journalReplayer.drain();
+				try {
+					journal.close();
+				} catch (IOException e) {
+					logger.error("Error closing gate journal", e);
+				}
+			}
+			storageConfig.close();
+		}));
+		gateServer.start();
+	}
+
+	private static void launchFacilities() throws IOException {
+		if (System.getProperty("parkit.journal.file") != null) {
+			// journal records carry no facility
+			logger.warn("Gate journal ignored, it needs a single facility");
+		}
+		FacilityRouter router = FacilityRouter.fromSystemProperties();
+		Map<Integer, StorageConfig> storageConfigs = StorageConfig.jdbc(router);
+		TariffEngine tariffEngine = TariffEngine.fromSystemProperties();
+		Map<Integer, ParkingService> parkingServices = new LinkedHashMap<>();
+		List<TicketArchiver> archivers = new ArrayList<>();
+		storageConfigs.forEach((facilityId, storageConfig) -> {
+			parkingServices.put(facilityId,
+					new ParkingService(null, storageConfig.getParkingSpotRepository(),
+							storageConfig.getTicketRepository(),
+							new FareCalculatorService(storageConfig.getTicketRepository(), tariffEngine),
+							new SystemDateService(), storageConfig.getDataBaseConfig()));
+			TicketArchiver archiver = startArchiver(storageConfig.getTicketRepository());
+			if (archiver != null) {
+				archivers.add(archiver);
+			}
+		});
+		MetricsJmxExporter.register();
+		GateServer gateServer = new GateServer(parkingServices,
+				new InetSocketAddress(System.getProperty("parkit.gate.host", "localhost"),
+						Integer.getInteger("parkit.gate.port", 8080)),
+				Integer.getInteger("parkit.gate.workerThreads", 32));
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			gateServer.stop();
+			archivers.forEach(TicketArchiver::stop);
+			storageConfigs.values().forEach(StorageConfig::close);
+			router.shutdown();
+		}));
+		gateServer.start();
+	}
+
+	// Closed tickets older than -Dparkit.archive.horizonDays (default 365, 0 keeps every ticket in
+	// the ticket table) are archived in the background, see TicketArchiver
+	private static TicketArchiver startArchiver(TicketRepository ticketRepository) {
+		int horizonDays = Integer.getInteger("parkit.archive.horizonDays", 365);
+		if (horizonDays <= 0) {
+			return null;
+		}
+		TicketArchiver archiver = new TicketArchiver(ticketRepository, new SystemDateService(),
+				TimeUnit.DAYS.toMillis(horizonDays), Integer.getInteger("parkit.archive.batchSize", 1000));
+		archiver.start(Long.getLong("parkit.archive.intervalMillis", 3600000L));
+		return archiver;
+	}
+
+	private interface Operation {
+		Response apply(Map<String, String> parameters) throws Exception;
+	}
+
+	private static final class Response {
+		private final int status;
+		private final String body;
+
+		private Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+}
@@ -1,11 +1,11 @@
 package com.parkit.parkingsystem.service;
 
+import java.io.IOException;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.parkit.parkingsystem.config.DataBaseConfig;
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.config.StorageConfig;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 
 public class InteractiveShell {
@@ -18,17 +18,22 @@ public class InteractiveShell {
 
 		boolean continueApp = true;
 		InputReaderUtil inputReaderUtil = new InputReaderUtil();
-		DataBaseConfig dataBaseConfig = new DataBaseConfig();
-		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig);
-		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+		StorageConfig storageConfig = StorageConfig.fromSystemProperties();
 		SystemDateService systemDateService = new SystemDateService();
 
-		parkingSpotDAO.dataBaseConfig = dataBaseConfig;
-		ticketDAO.dataBaseConfig = dataBaseConfig;
+		TariffEngine tariffEngine;
+		try {
+			tariffEngine = TariffEngine.fromSystemProperties();
+		} catch (IOException | IllegalArgumentException e) {
+			logger.error("Unable to load tariff, using the default fares", e);
+			tariffEngine = TariffEngine.defaults();
+		}
 
-		FareCalculatorService fareCalculatorService = new FareCalculatorService(ticketDAO);
-		ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO,
-				fareCalculatorService, systemDateService);
+		FareCalculatorService fareCalculatorService = new FareCalculatorService(storageConfig.getTicketRepository(),
+				tariffEngine);
+		ParkingService parkingService = new ParkingService(inputReaderUtil, storageConfig.getParkingSpotRepository(),
+				storageConfig.getTicketRepository(), fareCalculatorService, systemDateService,
+				storageConfig.getDataBaseConfig());
 
 		while (continueApp) {
 			loadMenu();
@@ -45,6 +50,7 @@ public class InteractiveShell {
 			case 3: {
 				System.out.println("Exiting from the system!");
 				continueApp = false;
+				storageConfig.close();
 				break;
 			}
 			default:
@@ -0,0 +1,174 @@
+package com.parkit.parkingsystem.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.dao.TicketRowHandler;
+import com.parkit.parkingsystem.model.OccupancyReport;
+import com.parkit.parkingsystem.model.Ticket;
+
+// Occupancy, dwell time and revenue over the ticket history. The period is cut into ranges of
+// whole days by exit time, streamed in parallel into primitive accumulators, one set per worker
+// thread, which are summed at the end. Tickets still parked at the end of the period are streamed
+// apart, so every ticket is read once and no Ticket object is created.
+public class OccupancyReportService {
+
+	private static final Logger logger = LogManager.getLogger("OccupancyReportService");
+
+	private static final long HOUR = 60 * 60 * 1000L;
+	private static final long DAY = 24 * HOUR;
+
+	private final TicketRepository ticketDAO;
+	private final int parallelism;
+	private final int daysPerRange;
+
+	public OccupancyReportService(TicketRepository ticketDAO) {
+		this(ticketDAO, Integer.getInteger("parkit.report.parallelism", Runtime.getRuntime().availableProcessors()),
+				Integer.getInteger("parkit.report.daysPerRange", 7));
+	}
+
+	// Each worker holds a DB connection while it streams, parallelism should stay below the pool size
+	public OccupancyReportService(TicketRepository ticketDAO, int parallelism, int daysPerRange) {
+		this.ticketDAO = ticketDAO;
+		this.parallelism = parallelism;
+		this.daysPerRange = daysPerRange;
+	}
+
+	// Period [from, to), open tickets count as parked until now
+	public OccupancyReport report(Date from, Date to) throws InterruptedException {
+		long fromMillis = from.getTime();
+		long toMillis = to.getTime();
+		if (toMillis <= fromMillis) {
+			throw new IllegalArgumentException("End of the period must be after its start");
+		}
+		long startTime = System.nanoTime();
+		int hours = (int) ((toMillis - fromMillis + HOUR - 1) / HOUR);
+		int days = (int) ((toMillis - fromMillis + DAY - 1) / DAY);
+		long parkedUntil = Math.min(System.currentTimeMillis(), toMillis);
+
+		List<long[]> ranges = new ArrayList<>();
+		for (long rangeStart = fromMillis; rangeStart < toMillis; rangeStart += daysPerRange * DAY) {
+			ranges.add(new long[] { rangeStart, Math.min(rangeStart + daysPerRange * DAY, toMillis) });
+		}
+		// the last task streams the tickets still parked at the end of the period
+		AtomicInteger nextTask = new AtomicInteger();
+		int tasks = ranges.size() + 1;
+		int workers = Math.min(parallelism, tasks);
+
+		AtomicInteger threadCounter = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+			Thread thread = new Thread(runnable, "occupancy-report-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<Accumulator>> results = new ArrayList<>();
+			for (int i = 0; i < workers; i++) {
+				results.add(executor.submit(() -> {
+					Accumulator accumulator = new Accumulator(fromMillis, toMillis, parkedUntil, hours, days);
+					for (int task = nextTask.getAndIncrement(); task < tasks; task = nextTask.getAndIncrement()) {
+						boolean streamed = task < ranges.size()
+								? ticketDAO.streamClosedTickets(ranges.get(task)[0], ranges.get(task)[1], accumulator)
+								: ticketDAO.streamTicketsParkedAt(toMillis, accumulator);
+						if (!streamed) {
+							accumulator.complete = false;
+							// the other workers stop at their next range
+							nextTask.set(tasks);
+						}
+					}
+					return accumulator;
+				}));
+			}
+			Accumulator total = new Accumulator(fromMillis, toMillis, parkedUntil, hours, days);
+			for (Future<Accumulator> result : results) {
+				total.add(result.get());
+			}
+			return report(total, startTime);
+		} catch (ExecutionException e) {
+			logger.error("Error while building the occupancy report", e.getCause());
+			throw new IllegalStateException("Occupancy report failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private OccupancyReport report(Accumulator total, long startTime) {
+		OccupancyReport report = new OccupancyReport(total.fromMillis, total.hours, total.days, total.occupiedMillis,
+				total.exits, total.dwellMillis, total.revenueInCents, total.rows,
+				(System.nanoTime() - startTime) / 1000000, total.complete);
+		logger.info("Occupancy report over {} days from {} tickets in {} ms{}", report.getDays(), report.getRows(),
+				report.getElapsedMillis(), report.isComplete() ? "" : ", stopped on error");
+		return report;
+	}
+
+	private static final class Accumulator implements TicketRowHandler {
+		private final long fromMillis;
+		private final long toMillis;
+		private final long parkedUntil;
+		private final int hours;
+		private final int days;
+		private final long[] occupiedMillis;
+		private final long[] exits;
+		private final long[] dwellMillis;
+		private final long[] revenueInCents;
+		private long rows;
+		private boolean complete = true;
+
+		private Accumulator(long fromMillis, long toMillis, long parkedUntil, int hours, int days) {
+			this.fromMillis = fromMillis;
+			this.toMillis = toMillis;
+			this.parkedUntil = parkedUntil;
+			this.hours = hours;
+			this.days = days;
+			this.occupiedMillis = new long[ParkingType.values().length * hours];
+			this.exits = new long[days];
+			this.dwellMillis = new long[days];
+			this.revenueInCents = new long[days];
+		}
+
+		@Override
+		public void onTicket(long inTime, long outTime, ParkingType parkingType, long priceInCents) {
+			rows++;
+			long start = Math.max(inTime, fromMillis);
+			long end = Math.min(outTime == Ticket.NO_TIME ? parkedUntil : outTime, toMillis);
+			int index = parkingType.ordinal() * hours + (int) ((start - fromMillis) / HOUR);
+			long hourEnd = fromMillis + ((start - fromMillis) / HOUR + 1) * HOUR;
+			while (start < end) {
+				long stop = Math.min(end, hourEnd);
+				occupiedMillis[index++] += stop - start;
+				start = stop;
+				hourEnd += HOUR;
+			}
+			if (outTime != Ticket.NO_TIME && outTime >= fromMillis && outTime < toMillis) {
+				int day = (int) ((outTime - fromMillis) / DAY);
+				exits[day]++;
+				dwellMillis[day] += outTime - inTime;
+				revenueInCents[day] += priceInCents;
+			}
+		}
+
+		private void add(Accumulator other) {
+			for (int i = 0; i < occupiedMillis.length; i++) {
+				occupiedMillis[i] += other.occupiedMillis[i];
+			}
+			for (int day = 0; day < days; day++) {
+				exits[day] += other.exits[day];
+				dwellMillis[day] += other.dwellMillis[day];
+				revenueInCents[day] += other.revenueInCents[day];
+			}
+			rows += other.rows;
+			complete &= other.complete;
+		}
+	}
+}
@@ -1,13 +1,22 @@
 package com.parkit.parkingsystem.service;
 
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.TransactionCallback;
 import com.parkit.parkingsystem.constants.ParkingType;
-import com.parkit.parkingsystem.dao.ParkingSpotDAO;
-import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.ParkingSpotRepository;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.model.EntryReceipt;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
@@ -15,20 +24,46 @@ import com.parkit.parkingsystem.util.InputReaderUtil;
 public class ParkingService {
 
 	private static final Logger logger = LogManager.getLogger("ParkingService");
+	private static final int PLATE_LOCK_STRIPES = 64;
 
 	private InputReaderUtil inputReaderUtil;
-	private ParkingSpotDAO parkingSpotDAO;
-	private TicketDAO ticketDAO;
+	private ParkingSpotRepository parkingSpotDAO;
+	private TicketRepository ticketDAO;
 	private FareCalculatorService fareCalculatorService;
 	private SystemDateService systemDateService;
+	private DataBaseConfig dataBaseConfig;
+	private GateJournal gateJournal;
+	// entries of one plate check for its open ticket and open one under the same lock, journaled
+	// exits check for it and close it under that lock too
+	private final Object[] plateLocks = new Object[PLATE_LOCK_STRIPES];
+	// exits still in the journal only, the DB reads their tickets as open until they are replayed
+	private final Map<String, JournaledExit> journaledExits = new ConcurrentHashMap<>();
 
-	public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO,
-			FareCalculatorService fareCalculatorService, SystemDateService systemDateService) {
+	public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotRepository parkingSpotDAO,
+			TicketRepository ticketDAO, FareCalculatorService fareCalculatorService,
+			SystemDateService systemDateService) {
+		this(inputReaderUtil, parkingSpotDAO, ticketDAO, fareCalculatorService, systemDateService, null);
+	}
+
+	// With a DataBaseConfig, each entry and exit runs as a single transaction on one connection
+	public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotRepository parkingSpotDAO,
+			TicketRepository ticketDAO, FareCalculatorService fareCalculatorService,
+			SystemDateService systemDateService, DataBaseConfig dataBaseConfig) {
 		this.inputReaderUtil = inputReaderUtil;
 		this.parkingSpotDAO = parkingSpotDAO;
 		this.ticketDAO = ticketDAO;
 		this.fareCalculatorService = fareCalculatorService;
 		this.systemDateService = systemDateService;
+		this.dataBaseConfig = dataBaseConfig;
+		for (int i = 0; i < plateLocks.length; i++) {
+			plateLocks[i] = new Object();
+		}
+	}
+
+	// With a journal, entries and exits are written to it and acknowledged without waiting for the
+	// DB, a GateJournalReplayer brings the DB up to date. Entries then need the spot index.
+	public void setGateJournal(GateJournal gateJournal) {
+		this.gateJournal = gateJournal;
 	}
 
 	public void processIncomingVehicle() {
@@ -38,33 +73,23 @@ public class ParkingService {
 			if (parkingSpot != null && parkingSpot.getId() > 0) {
 				String vehicleRegNumber = getVehicleRegNumber();
 
-				logger.info("Processing incoming vehicle: " + vehicleRegNumber);
-
-				parkingSpot.setAvailable(false);
-				parkingSpotDAO.updateParking(parkingSpot);// allot this parking space and mark it's availability as
-															// false
-
-				Date inTime = systemDateService.getCurrentDate();
-				Ticket ticket = new Ticket();
+				logger.info("Processing incoming vehicle: {}", vehicleRegNumber);
 
-				ticket.setParkingSpot(parkingSpot);
-				ticket.setVehicleRegNumber(vehicleRegNumber);
-				ticket.setPrice(0);
-				ticket.setInTime(inTime);
+				// another gate may take the spot found above while the plate is typed, enter() claims one
+				EntryReceipt receipt = enter(vehicleRegNumber, parkingSpot.getParkingType());
 
-				ticketDAO.saveTicket(ticket);
-
-				// Verify if the customer have more than 1 ticket (regular customer)
-				boolean isRecurringUser = ticketDAO.getNbTicket(vehicleRegNumber) > 1;
-
-				if (isRecurringUser) {
-					System.out.println(
-							"Welcome back! As a regular user of our parking lot, you'll benefit from 5% discount.");
+				int discountPercent = receipt.isRecurringUser()
+						? fareCalculatorService.discountPercent(previousVisits(vehicleRegNumber))
+						: 0;
+				if (discountPercent > 0) {
+					System.out.println("Welcome back! As a regular user of our parking lot, you'll benefit from "
+							+ discountPercent + "% discount.");
 				}
 
 				System.out.println("Generated Ticket and saved in DB");
-				System.out.println("Please park your vehicle in spot number:" + parkingSpot.getId());
-				System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + inTime);
+				System.out.println("Please park your vehicle in spot number:" + receipt.getParkingNumber());
+				System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:"
+						+ receipt.getInTime());
 			} else {
 				throw new Exception("Error fetching parking number from DB. Paking slots might be full");
 			}
@@ -73,40 +98,293 @@ public class ParkingService {
 		}
 	}
 
+	// Saves the ticket of a vehicle parked on an already taken spot
+	private EntryReceipt openTicket(ParkingSpot parkingSpot, String vehicleRegNumber) throws Exception {
+		Ticket ticket = new Ticket();
+		ticket.setFacilityId(parkingSpot.getFacilityId());
+		ticket.setParkingSpot(parkingSpot);
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setPriceInCents(0);
+		ticket.setInTime(systemDateService.getCurrentDate());
+		if (!ticketDAO.saveTicket(ticket)) {
+			throw new Exception("Unable to register entry of vehicle " + vehicleRegNumber);
+		}
+
+		// Verify if the customer have more than 1 ticket (regular customer)
+		return new EntryReceipt(ticket, ticketDAO.getNbTicket(vehicleRegNumber) > 1);
+	}
+
 	public void processExitingVehicle() {
 		try {
 			String vehicleRegNumber = getVehicleRegNumber();
-			Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
+			Ticket ticket = exit(vehicleRegNumber);
 
 			if (ticket == null) {
 				System.out.println("Ticket not found for vehicle registration number: " + vehicleRegNumber);
-				return;
+			} else {
+				System.out.println("Thank you for your trust, please pay the parking fare:" + ticket.getPrice());
+				System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:"
+						+ ticket.getOutTime());
 			}
+		} catch (Exception e) {
+			logger.error("Unable to process exiting vehicle", e);
+		}
+	}
 
-			Date outTime = systemDateService.getCurrentDate();
-			ticket.setOutTime(outTime);
-
-			// Count tickets
-			int nbTickets = ticketDAO.getNbTicket(vehicleRegNumber);
-			boolean isRecurringUser = nbTickets > 1;
-
-			double calculatedFare = fareCalculatorService.calculateFare(ticket, isRecurringUser);
-			ticket.setPrice(calculatedFare);
+	// Gate operations below do no console I/O and can be called from many threads at once
 
-			if (ticketDAO.updateTicket(ticket)) {
+	// Claims a free spot and opens a ticket. Throws IllegalStateException when the vehicle is
+	// already parked or no spot of that type is left.
+	public EntryReceipt enter(String vehicleRegNumber, ParkingType parkingType) throws Exception {
+		checkEntry(vehicleRegNumber, parkingType);
+		if (gateJournal != null) {
+			return enterJournaled(vehicleRegNumber, parkingType);
+		}
+		if (ticketDAO.isWriteBehind()) {
+			return await(enterAsync(vehicleRegNumber, parkingType));
+		}
+		// held until the ticket is committed
+		synchronized (plateLock(vehicleRegNumber)) {
+			return inUnitOfWork(() -> {
+				ParkingSpot parkingSpot = claimSpot(vehicleRegNumber, parkingType);
+				return openTicket(parkingSpot, vehicleRegNumber);
+			});
+		}
+	}
 
-				ParkingSpot parkingSpot = ticket.getParkingSpot();
+	// Same as enter() but the ticket goes through the TicketDAO write pipeline when there is one:
+	// the spot is claimed right away and the future completes once the ticket is committed. The
+	// claim and the ticket are not one transaction, the spot is released if the ticket fails.
+	public CompletableFuture<EntryReceipt> enterAsync(String vehicleRegNumber, ParkingType parkingType) {
+		checkEntry(vehicleRegNumber, parkingType);
+		ParkingSpot parkingSpot;
+		boolean isRecurringUser;
+		Ticket ticket = new Ticket();
+		CompletableFuture<Boolean> saving;
+		// held until the queued ticket is known as open
+		synchronized (plateLock(vehicleRegNumber)) {
+			parkingSpot = claimSpot(vehicleRegNumber, parkingType);
+			// the ticket being saved is not counted yet
+			isRecurringUser = ticketDAO.getNbTicket(vehicleRegNumber) > 0;
+			ticket.setFacilityId(parkingSpot.getFacilityId());
+			ticket.setParkingSpot(parkingSpot);
+			ticket.setVehicleRegNumber(vehicleRegNumber);
+			ticket.setPriceInCents(0);
+			ticket.setInTime(systemDateService.getCurrentDate());
+			saving = ticketDAO.saveTicketAsync(ticket);
+		}
+		return saving.thenApply(saved -> {
+			if (!saved) {
 				parkingSpot.setAvailable(true);
 				parkingSpotDAO.updateParking(parkingSpot);
-				System.out.println("Thank you for your trust, please pay the parking fare:" + ticket.getPrice());
-				System.out.println(
-						"Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
-			} else {
-				System.out.println("Unable to update ticket information. Error occurred");
+				throw new CompletionException(new Exception("Unable to register entry of vehicle " + vehicleRegNumber));
 			}
-		} catch (Exception e) {
-			logger.error("Unable to process exiting vehicle", e);
+			return new EntryReceipt(ticket, isRecurringUser);
+		});
+	}
+
+	// Prices and closes the open ticket of the vehicle, returns null if it is not parked
+	public Ticket exit(String vehicleRegNumber) throws Exception {
+		if (gateJournal != null) {
+			return exitJournaled(vehicleRegNumber);
+		}
+		if (ticketDAO.isWriteBehind()) {
+			return await(exitAsync(vehicleRegNumber));
+		}
+		return inUnitOfWork(() -> registerExit(vehicleRegNumber));
+	}
+
+	// Same as exit() with the ticket update going through the TicketDAO write pipeline, the spot
+	// is freed once the closed ticket is committed. Completes with null if the vehicle is not parked.
+	public CompletableFuture<Ticket> exitAsync(String vehicleRegNumber) {
+		Ticket ticket = ticketDAO.getOpenTicket(vehicleRegNumber);
+		if (ticket == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		ticket.setOutTime(systemDateService.getCurrentDate());
+		fareCalculatorService.calculateFare(ticket, previousVisits(vehicleRegNumber));
+		return ticketDAO.updateTicketAsync(ticket).thenApply(updated -> {
+			if (!updated) {
+				throw new CompletionException(
+						new Exception("Unable to update ticket information of vehicle " + vehicleRegNumber));
+			}
+			ParkingSpot parkingSpot = ticket.getParkingSpot();
+			parkingSpot.setAvailable(true);
+			if (!parkingSpotDAO.updateParking(parkingSpot)) {
+				throw new CompletionException(new Exception("Unable to free parking spot " + parkingSpot.getId()));
+			}
+			return ticket;
+		});
+	}
+
+	private EntryReceipt enterJournaled(String vehicleRegNumber, ParkingType parkingType) {
+		synchronized (plateLock(vehicleRegNumber)) {
+			return registerJournaledEntry(vehicleRegNumber, parkingType);
+		}
+	}
+
+	private EntryReceipt registerJournaledEntry(String vehicleRegNumber, ParkingType parkingType) {
+		if (ticketDAO.getOpenTicket(vehicleRegNumber) != null) {
+			throw new IllegalStateException("Vehicle " + vehicleRegNumber + " is already parked");
+		}
+		int parkingNumber = parkingSpotDAO.holdNextAvailableSlot(parkingType);
+		if (parkingNumber <= 0) {
+			throw new IllegalStateException("No " + parkingType + " parking spot available");
+		}
+		ParkingSpot parkingSpot = newParkingSpot(parkingNumber, parkingType, false);
+		Ticket ticket = new Ticket();
+		ticket.setFacilityId(parkingSpot.getFacilityId());
+		ticket.setParkingSpot(parkingSpot);
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setPriceInCents(0);
+		ticket.setInTime(systemDateService.getCurrentDate());
+		try {
+			gateJournal.appendEntry(ticket);
+		} catch (RuntimeException e) {
+			parkingSpotDAO.releaseHold(parkingNumber);
+			parkingSpotDAO.freeSlotLocally(parkingSpot);
+			throw e;
+		}
+		ticketDAO.registerPendingTicket(ticket);
+		// the ticket is not counted until it is replayed
+		return new EntryReceipt(ticket, ticketDAO.getNbTicket(vehicleRegNumber) > 0);
+	}
+
+	private Ticket exitJournaled(String vehicleRegNumber) {
+		synchronized (plateLock(vehicleRegNumber)) {
+			return registerJournaledExit(vehicleRegNumber);
+		}
+	}
+
+	private Ticket registerJournaledExit(String vehicleRegNumber) {
+		// taken first, an exit replayed after it is still pending for the ticket read below
+		long replayedSequence = gateJournal.getReplayedSequence();
+		Ticket ticket = ticketDAO.getOpenTicket(vehicleRegNumber);
+		if (ticket == null || isJournaledExit(ticket, replayedSequence)) {
+			return null;
 		}
+		ticket.setOutTime(systemDateService.getCurrentDate());
+		// a ticket without ID is still in the journal only and not counted yet
+		int previousTickets = ticketDAO.getNbTicket(vehicleRegNumber) - (ticket.getId() > 0 ? 1 : 0);
+		fareCalculatorService.calculateFare(ticket, previousTickets);
+		long sequence = gateJournal.appendExit(ticket);
+		journaledExits.put(vehicleRegNumber, new JournaledExit(sequence, ticket.getInTimeMillis()));
+		// pruned once most of them are replayed
+		if (journaledExits.size() > 2 * gateJournal.getPendingCount()) {
+			journaledExits.values().removeIf(exit -> exit.sequence <= replayedSequence);
+		}
+		ticketDAO.forgetOpenTicket(vehicleRegNumber);
+		parkingSpotDAO.freeSlotLocally(ticket.getParkingSpot());
+		return ticket;
+	}
+
+	private boolean isJournaledExit(Ticket ticket, long replayedSequence) {
+		JournaledExit exit = journaledExits.get(ticket.getVehicleRegNumber());
+		// the DB keeps the seconds of the in time only
+		return exit != null && exit.sequence > replayedSequence
+				&& exit.inTimeMillis / 1000 == ticket.getInTimeMillis() / 1000;
+	}
+
+	private static void checkEntry(String vehicleRegNumber, ParkingType parkingType) {
+		if (vehicleRegNumber == null || vehicleRegNumber.trim().isEmpty()) {
+			throw new IllegalArgumentException("Missing vehicle registration number");
+		}
+		// rejected here rather than when the ticket is written, which may be long after a journaled entry
+		if (vehicleRegNumber.length() > Ticket.MAX_VEHICLE_REG_NUMBER_LENGTH) {
+			throw new IllegalArgumentException("Vehicle registration number longer than "
+					+ Ticket.MAX_VEHICLE_REG_NUMBER_LENGTH + " characters");
+		}
+		if (parkingType == null) {
+			throw new IllegalArgumentException("Missing vehicle type");
+		}
+	}
+
+	private Object plateLock(String vehicleRegNumber) {
+		return plateLocks[(vehicleRegNumber.hashCode() & Integer.MAX_VALUE) % plateLocks.length];
+	}
+
+	// Callers hold the plate lock until the ticket is visible to getOpenTicket
+	private ParkingSpot claimSpot(String vehicleRegNumber, ParkingType parkingType) {
+		if (ticketDAO.getOpenTicket(vehicleRegNumber) != null) {
+			throw new IllegalStateException("Vehicle " + vehicleRegNumber + " is already parked");
+		}
+		int parkingNumber = parkingSpotDAO.claimNextAvailableSlot(parkingType);
+		if (parkingNumber <= 0) {
+			throw new IllegalStateException("No " + parkingType + " parking spot available");
+		}
+		return newParkingSpot(parkingNumber, parkingType, false);
+	}
+
+	// Spots handed out by the repository belong to its facility
+	private ParkingSpot newParkingSpot(int parkingNumber, ParkingType parkingType, boolean isAvailable) {
+		ParkingSpot parkingSpot = new ParkingSpot(parkingNumber, parkingType, isAvailable);
+		parkingSpot.setFacilityId(parkingSpotDAO.getFacilityId());
+		return parkingSpot;
+	}
+
+	private static <T> T await(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	// Fare the vehicle would pay if it left now, nothing is saved. Returns null if it is not parked.
+	public Ticket quote(String vehicleRegNumber) {
+		Ticket ticket = ticketDAO.getOpenTicket(vehicleRegNumber);
+		if (ticket == null) {
+			return null;
+		}
+		ticket.setOutTime(systemDateService.getCurrentDate());
+		fareCalculatorService.calculateFare(ticket, previousVisits(vehicleRegNumber));
+		return ticket;
+	}
+
+	// Tickets of the vehicle before the open one, which is counted once saved
+	private int previousVisits(String vehicleRegNumber) {
+		return Math.max(0, ticketDAO.getNbTicket(vehicleRegNumber) - 1);
+	}
+
+	// Prices and closes the ticket and frees its spot, returns null if there was nothing to close
+	private Ticket registerExit(String vehicleRegNumber) throws Exception {
+		Ticket ticket = ticketDAO.getOpenTicket(vehicleRegNumber);
+
+		if (ticket == null) {
+			return null;
+		}
+
+		Date outTime = systemDateService.getCurrentDate();
+		ticket.setOutTime(outTime);
+
+		fareCalculatorService.calculateFare(ticket, previousVisits(vehicleRegNumber));
+
+		if (!ticketDAO.updateTicket(ticket)) {
+			// closed by another gate since it was read
+			if (ticketDAO.getOpenTicket(vehicleRegNumber) == null) {
+				return null;
+			}
+			throw new Exception("Unable to update ticket information of vehicle " + vehicleRegNumber);
+		}
+
+		ParkingSpot parkingSpot = ticket.getParkingSpot();
+		parkingSpot.setAvailable(true);
+		if (!parkingSpotDAO.updateParking(parkingSpot)) {
+			throw new Exception("Unable to free parking spot " + parkingSpot.getId());
+		}
+		return ticket;
+	}
+
+	// Without a DataBaseConfig every DAO call commits on its own
+	private <T> T inUnitOfWork(TransactionCallback<T> work) throws Exception {
+		if (dataBaseConfig == null) {
+			return work.doInTransaction();
+		}
+		return dataBaseConfig.inTransaction(work);
 	}
 
 	private String getVehicleRegNumber() throws Exception {
@@ -120,7 +398,7 @@ public class ParkingService {
 		try {
 			int parkingNumber = parkingSpotDAO.getNextAvailableSlot(parkingType);
 			if (parkingNumber > 0) {
-				parkingSpot = new ParkingSpot(parkingNumber, parkingType, true);
+				parkingSpot = newParkingSpot(parkingNumber, parkingType, true);
 			} else {
 				throw new Exception("Error fetching parking number from DB. Parking slots might be full");
 			}
@@ -145,4 +423,14 @@ public class ParkingService {
 			throw new IllegalArgumentException("Entered input is invalid");
 		}
 	}
+
+	private static final class JournaledExit {
+		private final long sequence;
+		private final long inTimeMillis;
+
+		private JournaledExit(long sequence, long inTimeMillis) {
+			this.sequence = sequence;
+			this.inTimeMillis = inTimeMillis;
+		}
+	}
 }
@@ -0,0 +1,205 @@
+package com.parkit.parkingsystem.service;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+
+// Rates compiled from tariff properties into per-minute tables, so that pricing a stay of any
+// length is a few array reads. Properties, with the parking type in lower case:
+//   zone=Europe/Paris           time zone of the bands, the JVM default when missing
+//   graceMinutes=30             stays shorter than this are free
+//   car.graceMinutes=15         per type override of the grace period
+//   car.bands=00:00=150,08:00=300,20:00=150
+//                               rate per hour in cents from each time of day until the next band
+//   car.dailyCapCents=2000      most a vehicle pays per 24 hours from its entry, before discount
+//   loyalty.tiers=1:5,10:10     percent off from a number of previous visits, the highest applies
+// A type without bands cannot be priced.
+public final class Tariff {
+
+	private static final int MINUTES_PER_DAY = 24 * 60;
+	private static final long MILLIS_PER_MINUTE = 60 * 1000;
+	private static final long MILLIS_PER_DAY = MINUTES_PER_DAY * MILLIS_PER_MINUTE;
+	// costs are kept in cents per hour times millis, exact until the final rounding
+	private static final long COST_PER_CENT = 60 * 60 * 1000;
+
+	private final ZoneRules zoneRules;
+	// by parking type ordinal: rate of each minute of the day, and cost from midnight up to the
+	// start of each minute, with the cost of the whole day at the end
+	private final long[][] minuteRates;
+	private final long[][] costsUntilMinute;
+	private final long[] dailyCaps;
+	private final long[] graceMillis;
+	// ascending previous visits, and the percent off from there on
+	private final int[] loyaltyVisits;
+	private final int[] loyaltyPercents;
+
+	private Tariff(Properties properties) {
+		String zone = properties.getProperty("zone");
+		try {
+			zoneRules = (zone == null ? ZoneId.systemDefault() : ZoneId.of(zone.trim())).getRules();
+		} catch (DateTimeException e) {
+			throw new IllegalArgumentException("Invalid tariff zone " + zone, e);
+		}
+		int types = ParkingType.values().length;
+		minuteRates = new long[types][];
+		costsUntilMinute = new long[types][];
+		dailyCaps = new long[types];
+		graceMillis = new long[types];
+		long defaultGrace = parseLong(properties, "graceMinutes", 0) * MILLIS_PER_MINUTE;
+		for (ParkingType parkingType : ParkingType.values()) {
+			String prefix = parkingType.toString().toLowerCase() + ".";
+			int type = parkingType.ordinal();
+			graceMillis[type] = parseLong(properties, prefix + "graceMinutes", defaultGrace / MILLIS_PER_MINUTE)
+					* MILLIS_PER_MINUTE;
+			long dailyCap = parseLong(properties, prefix + "dailyCapCents", -1);
+			dailyCaps[type] = dailyCap < 0 ? Long.MAX_VALUE : dailyCap * COST_PER_CENT;
+			String bands = properties.getProperty(prefix + "bands");
+			if (bands != null) {
+				minuteRates[type] = compileBands(prefix + "bands", bands);
+				costsUntilMinute[type] = new long[MINUTES_PER_DAY + 1];
+				for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+					costsUntilMinute[type][minute + 1] = costsUntilMinute[type][minute]
+							+ minuteRates[type][minute] * MILLIS_PER_MINUTE;
+				}
+			}
+		}
+		TreeMap<Integer, Integer> tiers = new TreeMap<>();
+		String loyalty = properties.getProperty("loyalty.tiers", "").trim();
+		for (String tier : loyalty.isEmpty() ? new String[0] : loyalty.split(",")) {
+			String[] visitsAndPercent = tier.trim().split(":");
+			try {
+				int percent = Integer.parseInt(visitsAndPercent[1].trim());
+				if (visitsAndPercent.length != 2 || percent < 0 || percent > 100) {
+					throw new IllegalArgumentException("Invalid loyalty tier " + tier);
+				}
+				tiers.put(Integer.parseInt(visitsAndPercent[0].trim()), percent);
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Invalid loyalty tier " + tier, e);
+			}
+		}
+		loyaltyVisits = tiers.keySet().stream().mapToInt(Integer::intValue).toArray();
+		loyaltyPercents = tiers.values().stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	public static Tariff compile(Properties properties) {
+		return new Tariff(properties);
+	}
+
+	// The fares of the Fare constants: flat hourly rates, 30 free minutes, 5% off from the
+	// second visit on
+	public static Tariff defaults() {
+		Properties properties = new Properties();
+		properties.setProperty("graceMinutes",
+				String.valueOf(Fare.FREE_PARKING_DURATION_IN_MILLIS / MILLIS_PER_MINUTE));
+		properties.setProperty("car.bands", "00:00=" + Fare.CAR_RATE_PER_HOUR_IN_CENTS);
+		properties.setProperty("bike.bands", "00:00=" + Fare.BIKE_RATE_PER_HOUR_IN_CENTS);
+		properties.setProperty("loyalty.tiers", "1:" + Fare.RECURRING_USER_DISCOUNT_PERCENT);
+		return new Tariff(properties);
+	}
+
+	// Allocation free, rounded half up to the nearest cent. Full days cost the same whenever
+	// they start, the rest of the stay is read from the tables of the minutes it covers.
+	public long fareInCents(long inTimeMillis, long outTimeMillis, ParkingType parkingType, int previousVisits) {
+		if (inTimeMillis == Ticket.NO_TIME) {
+			throw new IllegalArgumentException("In time provided is null");
+		}
+		if (outTimeMillis < inTimeMillis) {
+			throw new IllegalArgumentException("Out time provided is before in time, incorrect :" + outTimeMillis);
+		}
+		int type = parkingType.ordinal();
+		if (minuteRates[type] == null) {
+			throw new IllegalArgumentException("Unkown Parking Type");
+		}
+		long durationInMillis = outTimeMillis - inTimeMillis;
+		if (durationInMillis < graceMillis[type]) {
+			return 0;
+		}
+		// bands follow the wall clock at entry, a daylight saving change during the stay does
+		// not change its length
+		long offsetMillis = zoneRules.getOffset(Instant.ofEpochMilli(inTimeMillis)).getTotalSeconds() * 1000L;
+		long start = Math.floorMod(inTimeMillis + offsetMillis, MILLIS_PER_DAY);
+		long fullDays = durationInMillis / MILLIS_PER_DAY;
+		long cost = fullDays * Math.min(costsUntilMinute[type][MINUTES_PER_DAY], dailyCaps[type])
+				+ Math.min(costWithinDay(type, start, durationInMillis % MILLIS_PER_DAY), dailyCaps[type]);
+		long percentToPay = 100 - discountPercent(previousVisits);
+		long divisor = COST_PER_CENT * 100;
+		return (cost * percentToPay + divisor / 2) / divisor;
+	}
+
+	public int discountPercent(int previousVisits) {
+		int percent = 0;
+		for (int i = 0; i < loyaltyVisits.length && loyaltyVisits[i] <= previousVisits; i++) {
+			percent = loyaltyPercents[i];
+		}
+		return percent;
+	}
+
+	// Cost of a stay shorter than a day starting at the given millis of the day
+	private long costWithinDay(int type, long start, long duration) {
+		long end = start + duration;
+		if (end <= MILLIS_PER_DAY) {
+			return costUntil(type, end) - costUntil(type, start);
+		}
+		return costsUntilMinute[type][MINUTES_PER_DAY] - costUntil(type, start)
+				+ costUntil(type, end - MILLIS_PER_DAY);
+	}
+
+	private long costUntil(int type, long millisOfDay) {
+		int minute = (int) (millisOfDay / MILLIS_PER_MINUTE);
+		if (minute == MINUTES_PER_DAY) {
+			return costsUntilMinute[type][MINUTES_PER_DAY];
+		}
+		return costsUntilMinute[type][minute] + minuteRates[type][minute] * (millisOfDay % MILLIS_PER_MINUTE);
+	}
+
+	// "00:00=150,08:00=300" into the rate of each minute, the last band runs until the first one
+	private static long[] compileBands(String key, String bands) {
+		TreeMap<Integer, Long> ratesByStart = new TreeMap<>();
+		for (String band : bands.split(",")) {
+			String[] startAndRate = band.trim().split("=");
+			try {
+				String[] hoursAndMinutes = startAndRate[0].trim().split(":");
+				int hours = Integer.parseInt(hoursAndMinutes[0]);
+				int minutes = Integer.parseInt(hoursAndMinutes[1]);
+				long rate = Long.parseLong(startAndRate[1].trim());
+				// 07:75 would silently start at 08:15
+				if (startAndRate.length != 2 || hoursAndMinutes.length != 2 || hours < 0 || minutes < 0 || minutes > 59
+						|| hours * 60 + minutes >= MINUTES_PER_DAY || rate < 0) {
+					throw new IllegalArgumentException("Invalid band " + band + " in " + key);
+				}
+				ratesByStart.put(hours * 60 + minutes, rate);
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Invalid band " + band + " in " + key, e);
+			}
+		}
+		long[] rates = new long[MINUTES_PER_DAY];
+		Arrays.fill(rates, ratesByStart.lastEntry().getValue());
+		for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+			Long rate = ratesByStart.get(minute);
+			if (rate != null) {
+				Arrays.fill(rates, minute, MINUTES_PER_DAY, rate);
+			}
+		}
+		return rates;
+	}
+
+	private static long parseLong(Properties properties, String key, long defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value " + value + " for " + key, e);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.parkit.parkingsystem.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+// Prices stays with the current Tariff. When loaded from a file, the file can be watched and the
+// tariff recompiled when it changes; a file that does not compile is logged and the previous
+// tariff stays in use. Pricing never waits for a reload.
+public class TariffEngine {
+
+	private static final Logger logger = LogManager.getLogger("TariffEngine");
+
+	private final Path file;
+	private volatile Tariff tariff;
+	private FileTime loadedModificationTime;
+	private ScheduledExecutorService reloadExecutor;
+
+	private TariffEngine(Path file, Tariff tariff, FileTime loadedModificationTime) {
+		this.file = file;
+		this.tariff = tariff;
+		this.loadedModificationTime = loadedModificationTime;
+	}
+
+	public static TariffEngine defaults() {
+		return new TariffEngine(null, Tariff.defaults(), null);
+	}
+
+	// Throws IllegalArgumentException when the file does not compile
+	public static TariffEngine fromFile(Path file) throws IOException {
+		FileTime modificationTime = Files.getLastModifiedTime(file);
+		return new TariffEngine(file, load(file), modificationTime);
+	}
+
+	// The tariff of -Dparkit.tariff.file, reloaded every -Dparkit.tariff.reloadMillis (5000 by
+	// default, 0 to never reload), or the defaults without the property
+	public static TariffEngine fromSystemProperties() throws IOException {
+		String file = System.getProperty("parkit.tariff.file");
+		if (file == null) {
+			return defaults();
+		}
+		TariffEngine tariffEngine = fromFile(Paths.get(file));
+		long reloadMillis = Long.getLong("parkit.tariff.reloadMillis", 5000L);
+		if (reloadMillis > 0) {
+			tariffEngine.startHotReload(reloadMillis);
+		}
+		return tariffEngine;
+	}
+
+	public long calculateFareInCents(long inTimeMillis, long outTimeMillis, ParkingType parkingType,
+			int previousVisits) {
+		return tariff.fareInCents(inTimeMillis, outTimeMillis, parkingType, previousVisits);
+	}
+
+	public Tariff getTariff() {
+		return tariff;
+	}
+
+	public synchronized void startHotReload(long checkIntervalMillis) {
+		if (file == null || reloadExecutor != null) {
+			return;
+		}
+		reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "tariff-reload");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reloadExecutor.scheduleWithFixedDelay(this::reloadIfModified, checkIntervalMillis, checkIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stopHotReload() {
+		if (reloadExecutor != null) {
+			reloadExecutor.shutdownNow();
+			reloadExecutor = null;
+		}
+	}
+
+	// Returns true when a changed file was compiled and is now in use
+	public synchronized boolean reloadIfModified() {
+		if (file == null) {
+			return false;
+		}
+		try {
+			FileTime modificationTime = Files.getLastModifiedTime(file);
+			if (modificationTime.equals(loadedModificationTime)) {
+				return false;
+			}
+			// remembered before compiling so that a broken file is reported once
+			loadedModificationTime = modificationTime;
+			tariff = load(file);
+			logger.info("Tariff reloaded from {}", file);
+			return true;
+		} catch (IOException | IllegalArgumentException e) {
+			logger.error("Unable to reload tariff from {}, keeping the current one", file, e);
+			return false;
+		}
+	}
+
+	private static Tariff load(Path file) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+		return Tariff.compile(properties);
+	}
+}
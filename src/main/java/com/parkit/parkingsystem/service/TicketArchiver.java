@@ -0,0 +1,86 @@
+package com.parkit.parkingsystem.service;
+
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.metrics.Metrics;
+
+// Keeps the ticket table down to the recent history the gates query: closed tickets whose out
+// time is older than the horizon are moved to the archive in batches, on a background thread.
+// getTicket, getNbTicket and the reports still see them, repricing only covers the recent ones.
+public class TicketArchiver {
+
+	private static final Logger logger = LogManager.getLogger("TicketArchiver");
+
+	private static final LongAdder archivedTickets = Metrics.counter("parkit_tickets_archived_total");
+
+	private final TicketRepository ticketDAO;
+	private final SystemDateService dateService;
+	private final long horizonMillis;
+	private final int batchSize;
+	private ScheduledExecutorService executor;
+
+	public TicketArchiver(TicketRepository ticketDAO, SystemDateService dateService, long horizonMillis,
+			int batchSize) {
+		this.ticketDAO = ticketDAO;
+		this.dateService = dateService;
+		this.horizonMillis = horizonMillis;
+		this.batchSize = batchSize;
+	}
+
+	// Archives right away, then every intervalMillis
+	public synchronized void start(long intervalMillis) {
+		if (executor != null) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ticket-archiver-" + ticketDAO.getFacilityId());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::archive, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	// Stops after the batch in progress, which is committed or rolled back as a whole
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+		}
+	}
+
+	// Moves batch after batch until no closed ticket is older than the horizon, returns how many
+	// tickets were moved
+	public int archive() {
+		long beforeMillis = dateService.getCurrentDate().getTime() - horizonMillis;
+		int total = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			int archived = ticketDAO.archiveClosedTickets(beforeMillis, batchSize);
+			if (archived < 0) {
+				logger.warn("Ticket archiving stopped after {} tickets, will retry", total);
+				break;
+			}
+			total += archived;
+			archivedTickets.add(archived);
+			if (archived < batchSize) {
+				break;
+			}
+		}
+		if (total > 0) {
+			logger.info("Archived {} tickets closed before {}", total, new Date(beforeMillis));
+		}
+		return total;
+	}
+}
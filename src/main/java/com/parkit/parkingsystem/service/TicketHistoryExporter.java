@@ -0,0 +1,82 @@
+package com.parkit.parkingsystem.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.parkit.parkingsystem.config.StorageConfig;
+import com.parkit.parkingsystem.dao.TicketHistoryWriter;
+import com.parkit.parkingsystem.dao.TicketRepository;
+
+// Dumps the closed tickets of a period, archived ones included, to a column-oriented history
+// file for offline analytics, see TicketHistoryWriter. The tickets are streamed from one cursor
+// sorted by out time; TicketHistoryReader then scans the file without the database.
+public class TicketHistoryExporter {
+
+	private static final Logger logger = LogManager.getLogger("TicketHistoryExporter");
+
+	private final TicketRepository ticketDAO;
+	private final int rowGroupSize;
+	private final int bufferSize;
+
+	public TicketHistoryExporter(TicketRepository ticketDAO) {
+		this(ticketDAO, Integer.getInteger("parkit.export.rowGroupSize", 65536),
+				Integer.getInteger("parkit.export.bufferSize", 4 * 1024 * 1024));
+	}
+
+	public TicketHistoryExporter(TicketRepository ticketDAO, int rowGroupSize, int bufferSize) {
+		this.ticketDAO = ticketDAO;
+		this.rowGroupSize = rowGroupSize;
+		this.bufferSize = bufferSize;
+	}
+
+	// Tickets whose out time is within [from, to), returns their number. The file is written next
+	// to its final name and moved there once complete, so readers never see half a file.
+	public long export(Date from, Date to, Path file) throws IOException {
+		long startTime = System.nanoTime();
+		Path partial = file.resolveSibling(file.getFileName() + ".partial");
+		long rows;
+		boolean streamed;
+		try (TicketHistoryWriter writer = new TicketHistoryWriter(partial, rowGroupSize, bufferSize)) {
+			try {
+				streamed = ticketDAO.streamClosedTicketDetails(from.getTime(), to.getTime(), writer);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			rows = writer.getRowCount();
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(partial);
+			throw e;
+		}
+		if (!streamed) {
+			Files.deleteIfExists(partial);
+			throw new IOException("Unable to read the ticket history");
+		}
+		Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		logger.info("Exported {} tickets to {} in {} ms", rows, file, (System.nanoTime() - startTime) / 1000000);
+		return rows;
+	}
+
+	// Exports from the storage picked by -Dparkit.storage, dates as yyyy-MM-dd, the end excluded.
+	// Without dates, the whole history up to now.
+	public static void launch(String file, String from, String to) throws IOException, ParseException {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+		Date fromDate = from == null ? new Date(0) : dateFormat.parse(from);
+		Date toDate = to == null ? new Date() : dateFormat.parse(to);
+		StorageConfig storageConfig = StorageConfig.fromSystemProperties();
+		try {
+			new TicketHistoryExporter(storageConfig.getTicketRepository()).export(fromDate, toDate, Paths.get(file));
+		} finally {
+			storageConfig.close();
+		}
+	}
+}
@@ -0,0 +1,8 @@
+/* Ticket lookups by plate ordered by in time (getTicket) and visit counts (getNbTicket) */
+create index IDX_TICKET_PLATE_IN_TIME on ticket(VEHICLE_REG_NUMBER, IN_TIME);
+
+/* Open ticket of a plate: MySQL has no partial index, OUT_TIME IS NULL is a seek on this one */
+create index IDX_TICKET_PLATE_OUT_TIME on ticket(VEHICLE_REG_NUMBER, OUT_TIME);
+
+/* Next free spot of a type */
+create index IDX_PARKING_TYPE_AVAILABLE on parking(TYPE, AVAILABLE, PARKING_NUMBER);
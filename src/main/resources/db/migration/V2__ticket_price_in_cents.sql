@@ -0,0 +1,6 @@
+/* Prices as integer cents, sums over many tickets stay exact */
+alter table ticket add column PRICE_CENTS bigint;
+
+update ticket set PRICE_CENTS = round(PRICE * 100) where PRICE is not null;
+
+alter table ticket drop column PRICE;
@@ -0,0 +1,2 @@
+/* Closed tickets of a period (repricing, analytics) and tickets still parked at a given time */
+create index IDX_TICKET_OUT_TIME_IN_TIME on ticket(OUT_TIME, IN_TIME);
@@ -0,0 +1,8 @@
+/* Facility of each spot and ticket, the existing rows belong to facility 1. Spot numbers stay
+   unique within a database, facilities sharing a database get distinct spot numbers. */
+alter table parking add column FACILITY_ID int NOT NULL DEFAULT 1;
+
+alter table ticket add column FACILITY_ID int NOT NULL DEFAULT 1;
+
+/* Next free spot of a type in a facility */
+create index IDX_PARKING_FACILITY_TYPE_AVAILABLE on parking(FACILITY_ID, TYPE, AVAILABLE, PARKING_NUMBER);
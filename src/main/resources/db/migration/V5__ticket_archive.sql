@@ -0,0 +1,24 @@
+/* Cold tier: closed tickets older than the archive horizon, moved out of ticket by TicketArchiver
+   with their ID. MySQL could range-partition it by month, but partitioning needs OUT_TIME in the
+   primary key and H2 has no partitions, so it is a plain table indexed like ticket. */
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE_CENTS bigint,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL,
+ FACILITY_ID int NOT NULL DEFAULT 1);
+
+/* Latest archived ticket of a plate (getTicket) */
+create index IDX_TICKET_ARCHIVE_PLATE_IN_TIME on ticket_archive(FACILITY_ID, VEHICLE_REG_NUMBER, IN_TIME);
+
+/* Reports over a period */
+create index IDX_TICKET_ARCHIVE_OUT_TIME on ticket_archive(FACILITY_ID, OUT_TIME);
+
+/* Archived tickets per plate, getNbTicket adds them to the count of ticket without reading the archive */
+create table ticket_plate_summary(
+ FACILITY_ID int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ ARCHIVED_TICKETS int NOT NULL,
+ PRIMARY KEY (FACILITY_ID, VEHICLE_REG_NUMBER));
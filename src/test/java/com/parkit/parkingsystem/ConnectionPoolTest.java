@@ -0,0 +1,137 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+
+public class ConnectionPoolTest {
+
+	private AtomicInteger createdConnections;
+	private Connection physicalConnection;
+	private ConnectionPool connectionPool;
+
+	@BeforeEach
+	private void setUpPerTest() throws SQLException {
+		createdConnections = new AtomicInteger();
+		physicalConnection = mock(Connection.class);
+		when(physicalConnection.isValid(anyInt())).thenReturn(true);
+		when(physicalConnection.getAutoCommit()).thenReturn(true);
+		connectionPool = new ConnectionPool(() -> {
+			createdConnections.incrementAndGet();
+			return physicalConnection;
+		}, 0, 1, 60000, 100);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		connectionPool.close();
+	}
+
+	@Test
+	public void closedConnectionIsReused() throws SQLException {
+		Connection first = connectionPool.borrowConnection();
+		first.close();
+		Connection second = connectionPool.borrowConnection();
+
+		assertEquals(1, createdConnections.get());
+		assertNotSame(first, second);
+		assertTrue(first.isClosed());
+		verify(physicalConnection, times(0)).close();
+	}
+
+	@Test
+	public void borrowTimesOutWhenPoolIsExhausted() throws SQLException {
+		connectionPool.borrowConnection();
+
+		assertThrows(SQLTimeoutException.class, () -> connectionPool.borrowConnection());
+	}
+
+	@Test
+	public void invalidConnectionIsReplacedOnBorrow() throws SQLException {
+		connectionPool.borrowConnection().close();
+		when(physicalConnection.isValid(anyInt())).thenReturn(false);
+
+		connectionPool.borrowConnection();
+
+		assertEquals(2, createdConnections.get());
+		verify(physicalConnection, times(1)).close();
+	}
+
+	@Test
+	public void openTransactionIsRolledBackOnReturn() throws SQLException {
+		Connection connection = connectionPool.borrowConnection();
+		when(physicalConnection.getAutoCommit()).thenReturn(false);
+
+		connection.close();
+
+		verify(physicalConnection, times(1)).rollback();
+		verify(physicalConnection, times(1)).setAutoCommit(true);
+	}
+
+	@Test
+	public void returnedConnectionCannotBeUsed() throws SQLException {
+		Connection connection = connectionPool.borrowConnection();
+		connection.close();
+
+		assertThrows(SQLException.class, () -> connection.prepareStatement("select 1"));
+	}
+
+	@Test
+	public void preparedStatementIsReusedAcrossBorrows() throws SQLException {
+		PreparedStatement statement = mock(PreparedStatement.class);
+		when(physicalConnection.prepareStatement("select 1")).thenReturn(statement);
+		ConnectionPool cachingPool = new ConnectionPool(() -> physicalConnection, 0, 1, 60000, 100, 2);
+		try {
+			for (int borrow = 0; borrow < 3; borrow++) {
+				try (Connection connection = cachingPool.borrowConnection();
+						PreparedStatement ps = connection.prepareStatement("select 1")) {
+					ps.setInt(1, borrow);
+				}
+			}
+
+			verify(physicalConnection, times(1)).prepareStatement("select 1");
+			verify(statement, times(3)).clearParameters();
+			verify(statement, never()).close();
+		} finally {
+			cachingPool.close();
+		}
+		verify(statement, times(1)).close();
+	}
+
+	@Test
+	public void leastRecentlyUsedStatementIsClosedBeyondCacheSize() throws SQLException {
+		PreparedStatement first = mock(PreparedStatement.class);
+		PreparedStatement second = mock(PreparedStatement.class);
+		when(physicalConnection.prepareStatement("select 1")).thenReturn(first);
+		when(physicalConnection.prepareStatement("select 2")).thenReturn(second);
+		ConnectionPool cachingPool = new ConnectionPool(() -> physicalConnection, 0, 1, 60000, 100, 1);
+		try (Connection connection = cachingPool.borrowConnection()) {
+			connection.prepareStatement("select 1").close();
+			connection.prepareStatement("select 2").close();
+
+			verify(first, times(1)).close();
+			verify(second, never()).close();
+		} finally {
+			cachingPool.close();
+		}
+	}
+}
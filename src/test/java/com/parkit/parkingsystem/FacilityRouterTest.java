@@ -0,0 +1,97 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.config.FacilityRouter;
+import com.parkit.parkingsystem.config.StorageConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.model.EntryReceipt;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.SystemDateService;
+
+public class FacilityRouterTest {
+
+	private static final long IN_TIME = 1700000000000L;
+	private static final long ONE_HOUR = 60 * 60 * 1000;
+
+	private InMemoryDataBaseTestConfig firstShard;
+	private InMemoryDataBaseTestConfig secondShard;
+	private FacilityRouter router;
+	private Map<Integer, StorageConfig> storageConfigs;
+	private SystemDateService systemDateService;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		firstShard = new InMemoryDataBaseTestConfig();
+		secondShard = new InMemoryDataBaseTestConfig();
+		// facilities 2 and 3 share the second database with distinct spot numbers
+		firstShard.addParkingSpots(1, 1, 1, ParkingType.CAR);
+		secondShard.addParkingSpots(2, 1, 1, ParkingType.CAR);
+		secondShard.addParkingSpots(3, 2, 1, ParkingType.CAR);
+		router = new FacilityRouter();
+		router.addFacility(1, firstShard);
+		router.addFacility(2, secondShard);
+		router.addFacility(3, secondShard);
+		storageConfigs = StorageConfig.jdbc(router);
+		systemDateService = mock(SystemDateService.class);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		storageConfigs.values().forEach(StorageConfig::close);
+		router.shutdown();
+	}
+
+	@Test
+	public void eachFacilityOnlySeesItsOwnSpotsAndTickets() throws Exception {
+		when(systemDateService.getCurrentDate()).thenReturn(new Date(IN_TIME));
+		for (int facilityId = 1; facilityId <= 3; facilityId++) {
+			EntryReceipt receipt = parkingService(facilityId).enter("ABCDEF", ParkingType.CAR);
+			assertFalse(receipt.isRecurringUser());
+		}
+		assertThrows(IllegalStateException.class, () -> parkingService(3).enter("GHIJKL", ParkingType.CAR));
+		assertEquals(1, storageConfigs.get(2).getTicketRepository().getTicket("ABCDEF").getParkingSpot().getId());
+		assertEquals(2, storageConfigs.get(3).getTicketRepository().getTicket("ABCDEF").getParkingSpot().getId());
+
+		when(systemDateService.getCurrentDate()).thenReturn(new Date(IN_TIME + ONE_HOUR));
+		Ticket ticket = parkingService(2).exit("ABCDEF");
+		assertEquals(2, ticket.getFacilityId());
+		assertEquals(2, ticket.getParkingSpot().getFacilityId());
+		assertEquals(150, ticket.getPriceInCents());
+		assertNull(parkingService(2).exit("ABCDEF"));
+		assertEquals(1, storageConfigs.get(3).getTicketRepository().getNbTicket("ABCDEF"));
+		// facility 3 is still parked, its spot was not freed by facility 2
+		assertThrows(IllegalStateException.class, () -> parkingService(3).enter("GHIJKL", ParkingType.CAR));
+		assertEquals(150, parkingService(3).exit("ABCDEF").getPriceInCents());
+	}
+
+	@Test
+	public void unknownFacilitiesAreRejected() {
+		assertSame(secondShard, router.getDataBaseConfig(3));
+		assertThrows(IllegalArgumentException.class, () -> router.getDataBaseConfig(4));
+		assertThrows(IllegalArgumentException.class, () -> router.addFacility(1, secondShard));
+	}
+
+	private ParkingService parkingService(int facilityId) {
+		StorageConfig storageConfig = storageConfigs.get(facilityId);
+		return new ParkingService(null, storageConfig.getParkingSpotRepository(), storageConfig.getTicketRepository(),
+				new FareCalculatorService(storageConfig.getTicketRepository()), systemDateService,
+				storageConfig.getDataBaseConfig());
+	}
+}
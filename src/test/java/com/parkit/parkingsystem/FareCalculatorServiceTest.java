@@ -202,4 +202,64 @@ public class FareCalculatorServiceTest {
 		fareCalculatorService.calculateFare(ticket, true);
 		assertEquals(0.95 * Fare.BIKE_RATE_PER_HOUR, ticket.getPrice(), 0.01);
 	}
+
+	@Test
+	public void calculateFareInCentsCar() {
+		long inTime = 1616927477011L;
+		long outTime = inTime + (60 * 60 * 1000); // 1 hour parking time
+
+		assertEquals(150, fareCalculatorService.calculateFareInCents(inTime, outTime, ParkingType.CAR, false));
+	}
+
+	@Test
+	public void calculateFareInCentsRoundsHalfUp() {
+		long inTime = 1616927477011L;
+		long outTime = inTime + (60 * 60 * 1000); // 1 hour parking time, 142.5 cents with discount
+
+		assertEquals(143, fareCalculatorService.calculateFareInCents(inTime, outTime, ParkingType.CAR, true));
+	}
+
+	@Test
+	public void calculateFareSetsTheTicketPriceInCents() {
+		ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+		ticket.setInTimeMillis(1616927477011L);
+		ticket.setOutTimeMillis(1616927477011L + (60 * 60 * 1000));
+		ticket.setParkingSpot(parkingSpot);
+
+		fareCalculatorService.calculateFare(ticket, true);
+		assertEquals(143, ticket.getPriceInCents());
+		assertEquals(1.43, ticket.getPrice());
+	}
+
+	@Test
+	public void calculateFareInCentsBikeWithLessThan30minutesParkingTime() {
+		long inTime = 1616927477011L;
+		long outTime = inTime + (29 * 60 * 1000);
+
+		assertEquals(0, fareCalculatorService.calculateFareInCents(inTime, outTime, ParkingType.BIKE, false));
+	}
+
+	@Test
+	public void calculateFareInCentsWithOutTimeBeforeInTime() {
+		long inTime = 1616927477011L;
+
+		assertThrows(IllegalArgumentException.class,
+				() -> fareCalculatorService.calculateFareInCents(inTime, inTime - 1, ParkingType.CAR, false));
+	}
+
+	@Test
+	public void calculateFareWithoutInTime() {
+		ticket.setOutTimeMillis(1616927477011L);
+		ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+
+		assertThrows(IllegalArgumentException.class, () -> fareCalculatorService.calculateFare(ticket));
+		assertThrows(IllegalArgumentException.class, () -> fareCalculatorService.calculateFareInCents(Ticket.NO_TIME,
+				1616927477011L, ParkingType.CAR, false));
+	}
+
+	@Test
+	public void discountPercentFollowsTheTariff() {
+		assertEquals(0, fareCalculatorService.discountPercent(0));
+		assertEquals(Fare.RECURRING_USER_DISCOUNT_PERCENT, fareCalculatorService.discountPercent(1));
+	}
 }
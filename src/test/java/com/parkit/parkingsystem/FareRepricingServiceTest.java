@@ -0,0 +1,145 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.model.RepricingReport;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.FareRepricingService;
+import com.parkit.parkingsystem.service.TariffEngine;
+
+public class FareRepricingServiceTest {
+
+	private static final long HOUR = 60 * 60 * 1000;
+	private static final long START = 1700000000000L;
+
+	private InMemoryDataBaseTestConfig dataBaseConfig;
+	private FareRepricingService fareRepricingService;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, 1, ParkingType.CAR);
+		dataBaseConfig.addParkingSpots(2, 1, ParkingType.BIKE);
+		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+		fareRepricingService = new FareRepricingService(ticketDAO, new FareCalculatorService(ticketDAO), 3, 2);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		dataBaseConfig.shutdown();
+	}
+
+	@Test
+	public void closedTicketsOfThePeriodAreRepricedAcrossChunks() throws Exception {
+		// 7 one hour visits of the same car, the first one is the only one without discount
+		for (int visit = 0; visit < 7; visit++) {
+			insertTicket(1, "ABCDEF", START + visit * 2 * HOUR, START + visit * 2 * HOUR + HOUR);
+		}
+		insertTicket(2, "BIKE01", START, START + 2 * HOUR);
+		insertTicket(1, "OPEN01", START, -1);
+
+		RepricingReport report = fareRepricingService.repriceClosedTickets(new Date(START), new Date(START + 100 * HOUR));
+
+		assertTrue(report.isComplete());
+		assertEquals(8, report.getRows());
+		assertEquals(150 + 6 * 143 + 200, report.getRevenueInCents());
+		assertEquals(1.5, priceOf(1));
+		for (int id = 2; id <= 7; id++) {
+			assertEquals(1.43, priceOf(id));
+		}
+		assertEquals(2.0, priceOf(8));
+		assertEquals(0.0, priceOf(9));
+	}
+
+	@Test
+	public void ticketsClosedOutsideThePeriodAreLeftAlone() throws Exception {
+		insertTicket(1, "ABCDEF", START, START + HOUR);
+		insertTicket(1, "GHIJKL", START, START + 3 * HOUR);
+
+		RepricingReport report = fareRepricingService.repriceClosedTickets(new Date(START),
+				new Date(START + 2 * HOUR));
+
+		assertEquals(1, report.getRows());
+		assertEquals(1.5, priceOf(1));
+		assertEquals(0.0, priceOf(2));
+	}
+
+	@Test
+	public void loyaltyTierFollowsTheVisitsBeforeEachTicket() throws Exception {
+		Path tariffFile = Files.createTempFile("tariff", ".properties");
+		try {
+			Files.write(tariffFile, "car.bands=00:00=100\nloyalty.tiers=1:5,10:10,50:15\n".getBytes(StandardCharsets.UTF_8));
+			TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+			FareRepricingService tieredRepricing = new FareRepricingService(ticketDAO,
+					new FareCalculatorService(ticketDAO, TariffEngine.fromFile(tariffFile)), 4, 2);
+			// an archived visit counts like the 11 in ticket
+			archiveTicket(100, "ABCDEF", START - 2 * HOUR, START - HOUR);
+			for (int visit = 0; visit < 11; visit++) {
+				insertTicket(1, "ABCDEF", START + visit * 2 * HOUR, START + visit * 2 * HOUR + HOUR);
+			}
+
+			RepricingReport report = tieredRepricing.repriceClosedTickets(new Date(START), new Date(START + 100 * HOUR));
+
+			assertEquals(11, report.getRows());
+			for (int id = 1; id <= 9; id++) {
+				assertEquals(0.95, priceOf(id));
+			}
+			assertEquals(0.9, priceOf(10));
+			assertEquals(0.9, priceOf(11));
+		} finally {
+			Files.delete(tariffFile);
+		}
+	}
+
+	private void archiveTicket(int id, String vehicleRegNumber, long inTime, long outTime) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				PreparedStatement ps = con.prepareStatement(
+						"insert into ticket_archive(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE_CENTS, IN_TIME, OUT_TIME) values(?,1,?,0,?,?)")) {
+			ps.setInt(1, id);
+			ps.setString(2, vehicleRegNumber);
+			ps.setTimestamp(3, new Timestamp(inTime));
+			ps.setTimestamp(4, new Timestamp(outTime));
+			ps.executeUpdate();
+		}
+	}
+
+	private void insertTicket(int parkingNumber, String vehicleRegNumber, long inTime, long outTime) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				PreparedStatement ps = con.prepareStatement(
+						"insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE_CENTS, IN_TIME, OUT_TIME) values(?,?,0,?,?)")) {
+			ps.setInt(1, parkingNumber);
+			ps.setString(2, vehicleRegNumber);
+			ps.setTimestamp(3, new Timestamp(inTime));
+			ps.setTimestamp(4, outTime < 0 ? null : new Timestamp(outTime));
+			ps.executeUpdate();
+		}
+	}
+
+	private double priceOf(int ticketId) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				PreparedStatement ps = con.prepareStatement("select PRICE_CENTS from ticket where ID = ?")) {
+			ps.setInt(1, ticketId);
+			try (ResultSet rs = ps.executeQuery()) {
+				rs.next();
+				return rs.getLong(1) / 100.0;
+			}
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.GateJournal;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.model.EntryReceipt;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.GateJournalReplayer;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.SystemDateService;
+
+public class GateJournalTest {
+
+	private static final long HOUR = 60 * 60 * 1000;
+	private static final long IN_TIME = 1700000000000L;
+
+	private Path journalFile;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		journalFile = Files.createTempFile("gate-journal", ".bin");
+		Files.delete(journalFile);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() throws Exception {
+		Files.deleteIfExists(journalFile);
+	}
+
+	@Test
+	public void pendingRecordsSurviveReopening() throws Exception {
+		try (GateJournal journal = new GateJournal(journalFile, 2, GateJournal.SyncPolicy.EVERY_RECORD, 0)) {
+			journal.appendEntry(ticket("ABCDEF", 1, IN_TIME));
+			journal.appendEntry(ticket("GHIJKL", 2, IN_TIME + HOUR));
+			assertThrows(IllegalStateException.class, () -> journal.appendEntry(ticket("MNOPQR", 3, IN_TIME)));
+			journal.markReplayed(1);
+			// the replayed slot is reused
+			journal.appendEntry(ticket("MNOPQR", 3, IN_TIME + 2 * HOUR));
+		}
+
+		try (GateJournal journal = new GateJournal(journalFile, 1000, GateJournal.SyncPolicy.NONE, 0)) {
+			assertEquals(1, journal.getReplayedSequence());
+			assertEquals(3, journal.getLastSequence());
+			assertNull(journal.read(1));
+			GateJournal.Record record = journal.read(3);
+			assertEquals("MNOPQR", record.getVehicleRegNumber());
+			assertEquals(GateJournal.ENTRY, record.getEventType());
+			assertEquals(ParkingType.CAR, record.getParkingType());
+			assertEquals(3, record.getParkingNumber());
+			assertEquals(IN_TIME + 2 * HOUR, record.getInTimeMillis());
+			assertEquals(Ticket.NO_TIME, record.getOutTimeMillis());
+		}
+	}
+
+	@Test
+	public void journaledEventsAreReplayedOnceInOrder() throws Exception {
+		InMemoryDataBaseTestConfig dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, 5, ParkingType.CAR);
+		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig);
+		parkingSpotDAO.startSpotIndex(60000);
+		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+		SystemDateService systemDateService = new SystemDateService() {
+			private long now = IN_TIME;
+
+			@Override
+			public Date getCurrentDate() {
+				Date date = new Date(now);
+				now += HOUR;
+				return date;
+			}
+		};
+		ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO,
+				new FareCalculatorService(ticketDAO), systemDateService, dataBaseConfig);
+		try (GateJournal journal = new GateJournal(journalFile, 100, GateJournal.SyncPolicy.NONE, 0)) {
+			parkingService.setGateJournal(journal);
+			GateJournalReplayer replayer = new GateJournalReplayer(journal, parkingSpotDAO, ticketDAO, dataBaseConfig);
+
+			parkingService.enter("ABCDEF", ParkingType.CAR);
+			Ticket firstVisit = parkingService.exit("ABCDEF");
+			parkingService.enter("GHIJKL", ParkingType.CAR);
+			EntryReceipt secondVisit = parkingService.enter("ABCDEF", ParkingType.CAR);
+			assertEquals(0, count(dataBaseConfig, "select count(*) from ticket"));
+
+			// a reconciliation before the replay must not give away the spots held by the journal
+			parkingSpotDAO.reconcileSpotIndex();
+			assertEquals(3, parkingSpotDAO.getSpotIndex().countAvailable(ParkingType.CAR));
+
+			assertEquals(4, replayer.drain());
+			assertEquals(0, replayer.drain());
+			assertEquals(1.5, firstVisit.getPrice());
+			assertEquals(2, secondVisit.getParkingNumber());
+			assertEquals(3, count(dataBaseConfig, "select count(*) from ticket"));
+			assertEquals(1, count(dataBaseConfig, "select count(*) from ticket where PRICE_CENTS = 150"));
+			assertEquals(2, count(dataBaseConfig, "select count(*) from parking where AVAILABLE = false"));
+
+			Ticket secondExit = parkingService.exit("ABCDEF");
+			replayer.drain();
+			assertEquals(1.43, secondExit.getPrice());
+			assertEquals(4, parkingSpotDAO.getSpotIndex().countAvailable(ParkingType.CAR));
+			assertEquals(0, journal.getPendingCount());
+		} finally {
+			parkingSpotDAO.stopSpotIndex();
+			dataBaseConfig.shutdown();
+		}
+	}
+
+	@Test
+	public void secondExitBeforeTheReplayFindsNoTicket() throws Exception {
+		InMemoryDataBaseTestConfig dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, 5, ParkingType.CAR);
+		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig);
+		parkingSpotDAO.startSpotIndex(60000);
+		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+		ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO,
+				new FareCalculatorService(ticketDAO), new SystemDateService(), dataBaseConfig);
+		try (GateJournal journal = new GateJournal(journalFile, 100, GateJournal.SyncPolicy.NONE, 0)) {
+			parkingService.setGateJournal(journal);
+			GateJournalReplayer replayer = new GateJournalReplayer(journal, parkingSpotDAO, ticketDAO, dataBaseConfig);
+			parkingService.enter("ABCDEF", ParkingType.CAR);
+			assertEquals(1, replayer.drain());
+
+			// the DB still has the ticket open until the exit is replayed
+			assertNotNull(parkingService.exit("ABCDEF"));
+			assertNull(parkingService.exit("ABCDEF"));
+
+			assertEquals(1, replayer.drain());
+			assertNull(parkingService.exit("ABCDEF"));
+			assertEquals(0, journal.getPendingCount());
+			assertEquals(1, count(dataBaseConfig, "select count(*) from ticket where OUT_TIME is not null"));
+		} finally {
+			parkingSpotDAO.stopSpotIndex();
+			dataBaseConfig.shutdown();
+		}
+	}
+
+	@Test
+	public void failingRecordsAreDeadLetteredAfterMaxAttempts() throws Exception {
+		InMemoryDataBaseTestConfig dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, 5, ParkingType.CAR);
+		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig);
+		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+		Path deadLetterFile = journalFile.resolveSibling(journalFile.getFileName() + ".dead");
+		try (GateJournal journal = new GateJournal(journalFile, 100, GateJournal.SyncPolicy.NONE, 0)) {
+			ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO,
+					new FareCalculatorService(ticketDAO), new SystemDateService(), dataBaseConfig);
+			parkingService.setGateJournal(journal);
+			assertThrows(IllegalArgumentException.class, () -> parkingService.enter("ABCDEFGHIJK", ParkingType.CAR));
+			assertEquals(0, journal.getLastSequence());
+
+			// fits the journal but not the ticket table, as written before the check at the gate
+			journal.appendEntry(ticket("ABCDEFGHIJKL", 1, IN_TIME));
+			journal.appendEntry(ticket("GHIJKL", 2, IN_TIME + HOUR));
+			GateJournalReplayer replayer = new GateJournalReplayer(journal, parkingSpotDAO, ticketDAO, dataBaseConfig);
+			replayer.setDeadLetterFile(deadLetterFile, 3);
+
+			assertEquals(0, replayer.drain());
+			assertEquals(0, replayer.drain());
+			assertEquals(2, replayer.drain());
+
+			assertEquals(0, journal.getPendingCount());
+			assertEquals(1, count(dataBaseConfig, "select count(*) from ticket"));
+			assertEquals(Collections.singletonList("1,ENTRY,ABCDEFGHIJKL,CAR,1," + IN_TIME + "," + Ticket.NO_TIME + ",0"),
+					Files.readAllLines(deadLetterFile));
+		} finally {
+			Files.deleteIfExists(deadLetterFile);
+			dataBaseConfig.shutdown();
+		}
+	}
+
+	@Test
+	public void recordsMatchTicketsStoredToTheSecond() throws Exception {
+		InMemoryDataBaseTestConfig dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, 5, ParkingType.CAR);
+		ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig);
+		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+		long inTime = IN_TIME + 789;
+		try (GateJournal journal = new GateJournal(journalFile, 100, GateJournal.SyncPolicy.NONE, 0)) {
+			// the entry reached the DB before a crash, which kept the seconds only
+			Ticket saved = ticket("ABCDEF", 1, IN_TIME);
+			assertTrue(ticketDAO.saveTicket(saved));
+			Ticket closed = ticket("ABCDEF", 1, inTime);
+			closed.setOutTime(new Date(inTime + HOUR));
+			closed.setPriceInCents(150);
+			journal.appendEntry(ticket("ABCDEF", 1, inTime));
+			journal.appendExit(closed);
+
+			assertEquals(2, new GateJournalReplayer(journal, parkingSpotDAO, ticketDAO, dataBaseConfig).drain());
+
+			assertEquals(1, count(dataBaseConfig, "select count(*) from ticket"));
+			assertEquals(1, count(dataBaseConfig, "select count(*) from ticket where PRICE_CENTS = 150"));
+		} finally {
+			dataBaseConfig.shutdown();
+		}
+	}
+
+	private static Ticket ticket(String vehicleRegNumber, int parkingNumber, long inTime) {
+		Ticket ticket = new Ticket();
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+		ticket.setInTime(new Date(inTime));
+		return ticket;
+	}
+
+	private static int count(InMemoryDataBaseTestConfig dataBaseConfig, String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				Statement statement = con.createStatement();
+				ResultSet rs = statement.executeQuery(sql)) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+}
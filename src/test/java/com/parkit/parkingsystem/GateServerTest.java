@@ -0,0 +1,95 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.GateServer;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.SystemDateService;
+
+public class GateServerTest {
+
+	private static final long IN_TIME = 1700000000000L;
+
+	private InMemoryDataBaseTestConfig dataBaseConfig;
+	private SystemDateService systemDateService;
+	private GateServer gateServer;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, 1, ParkingType.CAR);
+		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+		systemDateService = mock(SystemDateService.class);
+		when(systemDateService.getCurrentDate()).thenReturn(new Date(IN_TIME));
+		ParkingService parkingService = new ParkingService(null, new ParkingSpotDAO(dataBaseConfig), ticketDAO,
+				new FareCalculatorService(ticketDAO), systemDateService, dataBaseConfig);
+		gateServer = new GateServer(parkingService, new InetSocketAddress("localhost", 0), 4);
+		gateServer.start();
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		gateServer.stop();
+		dataBaseConfig.shutdown();
+	}
+
+	@Test
+	public void vehicleEntersIsQuotedAndExits() throws Exception {
+		assertEquals("200 plate=ABCDEF\nspot=1\ninTime=" + IN_TIME + "\nrecurringUser=false\n",
+				call("POST", "/entry?plate=ABCDEF&type=car"));
+		when(systemDateService.getCurrentDate()).thenReturn(new Date(IN_TIME + 60 * 60 * 1000));
+
+		assertTrue(call("GET", "/quote?plate=ABCDEF").endsWith("price=1.5\n"));
+		assertTrue(call("POST", "/exit?plate=ABCDEF").endsWith("price=1.5\n"));
+		assertTrue(call("POST", "/exit?plate=ABCDEF").startsWith("404 "));
+		assertTrue(call("GET", "/metrics")
+				.contains("parkit_dao_seconds_count{dao=\"ticket\",operation=\"saveTicket\"}"));
+	}
+
+	@Test
+	public void entryIsRejectedWhenParkingIsFullOrRequestIsInvalid() throws Exception {
+		call("POST", "/entry?plate=ABCDEF&type=CAR");
+
+		assertTrue(call("POST", "/entry?plate=GHIJKL&type=CAR").startsWith("409 "));
+		assertTrue(call("POST", "/entry?plate=ABCDEF&type=CAR").startsWith("409 "));
+		assertTrue(call("POST", "/entry?plate=GHIJKL&type=TRUCK").startsWith("400 "));
+		assertTrue(call("POST", "/entry?type=CAR").startsWith("400 "));
+		assertTrue(call("GET", "/entry?plate=GHIJKL&type=CAR").startsWith("405 "));
+	}
+
+	private String call(String method, String path) throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL(
+				"http://localhost:" + gateServer.getPort() + path).openConnection();
+		connection.setRequestMethod(method);
+		int status = connection.getResponseCode();
+		try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				body.write(buffer, 0, read);
+			}
+			return status + " " + new String(body.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}
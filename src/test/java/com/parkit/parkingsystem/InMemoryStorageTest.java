@@ -0,0 +1,91 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.config.StorageConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.model.ClosedTicketBatch;
+import com.parkit.parkingsystem.model.EntryReceipt;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.SystemDateService;
+
+public class InMemoryStorageTest {
+
+	private static final long IN_TIME = 1700000000000L;
+	private static final long ONE_HOUR = 60 * 60 * 1000;
+
+	private TicketRepository ticketRepository;
+	private SystemDateService systemDateService;
+	private ParkingService parkingService;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		Map<ParkingType, Integer> spotsPerType = new EnumMap<>(ParkingType.class);
+		spotsPerType.put(ParkingType.CAR, 1);
+		spotsPerType.put(ParkingType.BIKE, 1);
+		StorageConfig storageConfig = StorageConfig.inMemory(spotsPerType);
+		ticketRepository = storageConfig.getTicketRepository();
+		systemDateService = mock(SystemDateService.class);
+		parkingService = new ParkingService(null, storageConfig.getParkingSpotRepository(), ticketRepository,
+				new FareCalculatorService(ticketRepository), systemDateService, storageConfig.getDataBaseConfig());
+	}
+
+	@Test
+	public void secondVisitIsDiscountedAndSpotsAreReused() throws Exception {
+		when(systemDateService.getCurrentDate()).thenReturn(new Date(IN_TIME));
+		EntryReceipt receipt = parkingService.enter("ABCDEF", ParkingType.BIKE);
+		assertEquals(2, receipt.getParkingNumber());
+		assertFalse(receipt.isRecurringUser());
+		assertThrows(IllegalStateException.class, () -> parkingService.enter("GHIJKL", ParkingType.BIKE));
+
+		when(systemDateService.getCurrentDate()).thenReturn(new Date(IN_TIME + ONE_HOUR));
+		assertEquals(1.0, parkingService.exit("ABCDEF").getPrice());
+		assertNull(parkingService.exit("ABCDEF"));
+
+		assertTrue(parkingService.enter("ABCDEF", ParkingType.BIKE).isRecurringUser());
+		when(systemDateService.getCurrentDate()).thenReturn(new Date(IN_TIME + 3 * ONE_HOUR));
+		assertEquals(1.9, parkingService.exit("ABCDEF").getPrice());
+		assertEquals(2, ticketRepository.getNbTicket("ABCDEF"));
+	}
+
+	@Test
+	public void closedTicketsArePagedByIdWithTheirPreviousVisits() throws Exception {
+		for (int visit = 0; visit < 3; visit++) {
+			when(systemDateService.getCurrentDate()).thenReturn(new Date(IN_TIME + 2 * visit * ONE_HOUR));
+			parkingService.enter("ABCDEF", ParkingType.CAR);
+			when(systemDateService.getCurrentDate()).thenReturn(new Date(IN_TIME + (2 * visit + 1) * ONE_HOUR));
+			parkingService.exit("ABCDEF");
+		}
+		ClosedTicketBatch batch = new ClosedTicketBatch(2);
+
+		assertTrue(ticketRepository.getClosedTickets(IN_TIME, IN_TIME + 10 * ONE_HOUR, 0, batch));
+		assertEquals(2, batch.size());
+		assertEquals(0, batch.getPreviousVisits(0));
+		assertEquals(1, batch.getPreviousVisits(1));
+		batch.setPriceInCents(1, 42);
+		assertTrue(ticketRepository.updatePrices(batch));
+
+		Ticket latest = ticketRepository.getTicket("ABCDEF");
+		assertEquals(3, latest.getId());
+		assertTrue(ticketRepository.getClosedTickets(IN_TIME, IN_TIME + 10 * ONE_HOUR, batch.getLastId(), batch));
+		assertEquals(1, batch.size());
+		assertEquals(3, batch.getId(0));
+		assertEquals(2, batch.getPreviousVisits(0));
+	}
+}
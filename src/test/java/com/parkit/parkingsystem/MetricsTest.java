@@ -0,0 +1,47 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.metrics.LatencyHistogram;
+import com.parkit.parkingsystem.metrics.Metrics;
+
+public class MetricsTest {
+
+	@Test
+	public void histogramReportsPercentilesWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getMaxNanos());
+		long median = histogram.getPercentileNanos(50);
+		assertTrue(median >= 500000 && median <= 500000 * 1.07, "median " + median);
+		long p99 = histogram.getPercentileNanos(99);
+		assertTrue(p99 >= 990000 && p99 <= 1000000, "p99 " + p99);
+		assertEquals(0, new LatencyHistogram().getPercentileNanos(99));
+	}
+
+	@Test
+	public void snapshotMergesSuffixesAndQuantilesIntoLabels() {
+		Metrics.histogram("parkit_test_seconds{operation=\"op\"}").record(2000000000L);
+		Metrics.counter("parkit_test_errors_total").add(3);
+		Metrics.gauge("parkit_test_gauge", () -> 7);
+
+		Map<String, Number> snapshot = Metrics.snapshot();
+
+		assertEquals(1L, snapshot.get("parkit_test_seconds_count{operation=\"op\"}"));
+		assertEquals(2.0, snapshot.get("parkit_test_seconds_sum{operation=\"op\"}"));
+		assertTrue(snapshot.containsKey("parkit_test_seconds{operation=\"op\",quantile=\"0.99\"}"));
+		assertEquals(3L, snapshot.get("parkit_test_errors_total"));
+		assertTrue(Metrics.toText().contains("parkit_test_gauge 7\n"));
+		Metrics.removeGauge("parkit_test_gauge");
+	}
+}
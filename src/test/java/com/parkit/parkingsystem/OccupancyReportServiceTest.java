@@ -0,0 +1,108 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.InMemoryTicketRepository;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.model.OccupancyReport;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.OccupancyReportService;
+
+public class OccupancyReportServiceTest {
+
+	private static final long HOUR = 60 * 60 * 1000;
+	private static final long DAY = 24 * HOUR;
+	private static final long START = 1700006400000L;
+
+	private InMemoryDataBaseTestConfig dataBaseConfig;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, 2, ParkingType.CAR);
+		dataBaseConfig.addParkingSpots(3, 1, ParkingType.BIKE);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		dataBaseConfig.shutdown();
+	}
+
+	@Test
+	public void ticketsAreAggregatedAcrossRangesFromTheDB() throws Exception {
+		// entered before the period, left during the first hour
+		insertTicket(1, "ABCDEF", START - HOUR, START + HOUR / 2, 300);
+		// one and a half hour on the second day
+		insertTicket(2, "GHIJKL", START + DAY, START + DAY + 3 * HOUR / 2, 225);
+		insertTicket(3, "BIKE01", START + 2 * DAY, START + 2 * DAY + HOUR, 100);
+		// still parked after the end of the period
+		insertTicket(1, "MNOPQR", START + 3 * DAY - HOUR, START + 4 * DAY, 999);
+
+		OccupancyReport report = new OccupancyReportService(new TicketDAO(dataBaseConfig), 2, 1)
+				.report(new Date(START), new Date(START + 3 * DAY));
+
+		assertTrue(report.isComplete());
+		assertEquals(4, report.getRows());
+		assertEquals(3 * 24, report.getHours());
+		assertEquals(0.5, report.getAverageOccupancy(ParkingType.CAR, 0));
+		assertEquals(1.0, report.getAverageOccupancy(ParkingType.CAR, 24));
+		assertEquals(0.5, report.getAverageOccupancy(ParkingType.CAR, 25));
+		assertEquals(1.0, report.getAverageOccupancy(ParkingType.BIKE, 48));
+		assertEquals(1.0, report.getAverageOccupancy(ParkingType.CAR, 71));
+		assertEquals(0.0, report.getAverageOccupancy(ParkingType.BIKE, 0));
+		assertEquals(1, report.getExits(0));
+		assertEquals(300, report.getRevenueInCents(0));
+		assertEquals(3 * HOUR / 2, report.getAverageDwellMillis(0));
+		assertEquals(225, report.getRevenueInCents(1));
+		assertEquals(100, report.getRevenueInCents(2));
+		assertEquals(625, report.getRevenueInCents());
+		assertEquals(4 * HOUR / 3, report.getAverageDwellMillis());
+	}
+
+	@Test
+	public void openTicketsCountAsParkedUntilNow() throws Exception {
+		InMemoryTicketRepository ticketRepository = new InMemoryTicketRepository();
+		long now = System.currentTimeMillis();
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+		ticket.setVehicleRegNumber("ABCDEF");
+		ticket.setInTimeMillis(now - 2 * DAY);
+		ticketRepository.saveTicket(ticket);
+
+		OccupancyReport report = new OccupancyReportService(ticketRepository, 2, 1)
+				.report(new Date(now - 3 * DAY), new Date(now + DAY));
+
+		assertEquals(0.0, report.getAverageOccupancy(ParkingType.CAR, 0));
+		assertEquals(1.0, report.getAverageOccupancy(ParkingType.CAR, 24));
+		assertEquals(1.0, report.getAverageOccupancy(ParkingType.CAR, 71));
+		assertEquals(0.0, report.getAverageOccupancy(ParkingType.CAR, 73));
+		assertEquals(0, report.getRevenueInCents());
+	}
+
+	private void insertTicket(int parkingNumber, String vehicleRegNumber, long inTime, long outTime, long priceInCents)
+			throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				PreparedStatement ps = con.prepareStatement(
+						"insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE_CENTS, IN_TIME, OUT_TIME) values(?,?,?,?,?)")) {
+			ps.setInt(1, parkingNumber);
+			ps.setString(2, vehicleRegNumber);
+			ps.setLong(3, priceInCents);
+			ps.setTimestamp(4, new Timestamp(inTime));
+			ps.setTimestamp(5, new Timestamp(outTime));
+			ps.executeUpdate();
+		}
+	}
+}
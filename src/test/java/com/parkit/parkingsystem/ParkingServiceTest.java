@@ -28,6 +28,7 @@ import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.EntryReceipt;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.service.FareCalculatorService;
@@ -75,7 +76,7 @@ public class ParkingServiceTest {
 
 			when(inputReaderUtil.readSelection()).thenReturn(1);
 			when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
-			when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true); // update
+			when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(1); // claim
 			when(systemDateService.getCurrentDate()).thenReturn(new Date(FIXED_IN_TIME)); // Date
 			when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // vehicle reg
 
@@ -86,7 +87,8 @@ public class ParkingServiceTest {
 		parkingService.processIncomingVehicle();
 
 		verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class));
-		verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+		verify(parkingSpotDAO, Mockito.times(1)).claimNextAvailableSlot(ParkingType.CAR);
+		verify(parkingSpotDAO, Mockito.times(0)).updateParking(any(ParkingSpot.class));
 
 		// Create a ticket
 		Ticket ticket = new Ticket();
@@ -125,6 +127,7 @@ public class ParkingServiceTest {
 
 			when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // vehicle registration number
 			when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket); // get ticket for this vehicle reg number
+			when(ticketDAO.getOpenTicket("ABCDEF")).thenReturn(ticket); // open ticket read on exit
 			when(systemDateService.getCurrentDate()).thenReturn(new Date(FIXED_OUT_TIME)); // get out time
 			when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true); // update the ticket
 			when(ticketDAO.getNbTicket(anyString())).thenReturn(2); // Nb ticket for this vehicle reg number
@@ -170,6 +173,7 @@ public class ParkingServiceTest {
 
 			when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // vehicle reg
 			when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket);
+			when(ticketDAO.getOpenTicket("ABCDEF")).thenReturn(ticket); // open ticket read on exit
 			when(systemDateService.getCurrentDate()).thenReturn(new Date(FIXED_OUT_TIME)); // Date
 			when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(false);
 
@@ -252,7 +256,7 @@ public class ParkingServiceTest {
 	@Test
 	// Test for exiting vehicle and the ticket is not found
 	public void testProcessExitingVehicleTicketNotFound() throws Exception {
-		when(ticketDAO.getTicket(anyString())).thenReturn(null);
+		when(ticketDAO.getOpenTicket(anyString())).thenReturn(null);
 
 		parkingService.processExitingVehicle();
 
@@ -276,7 +280,7 @@ public class ParkingServiceTest {
 	@Test
 	// Test for exiting vehicle when an exception is thrown
 	public void testProcessExitingVehicleException() throws Exception {
-		when(ticketDAO.getTicket(anyString())).thenThrow(new RuntimeException("Database error"));
+		when(ticketDAO.getOpenTicket(anyString())).thenThrow(new RuntimeException("Database error"));
 
 		parkingService.processExitingVehicle();
 
@@ -289,14 +293,30 @@ public class ParkingServiceTest {
 	public void testProcessIncomingVehicleSaveTicketException() throws Exception {
 		when(inputReaderUtil.readSelection()).thenReturn(1);
 		when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+		when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
 		doThrow(new RuntimeException("Database error")).when(ticketDAO).saveTicket(any(Ticket.class));
 
 		parkingService.processIncomingVehicle();
 
-		verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+		verify(parkingSpotDAO, Mockito.times(1)).claimNextAvailableSlot(ParkingType.CAR);
 		verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class));
 	}
 
+	@Test
+	// The spot found before the plate is typed is taken by another gate and none is left
+	public void testProcessIncomingVehicleSpotTakenByAnotherGate() throws Exception {
+		when(inputReaderUtil.readSelection()).thenReturn(1);
+		when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+		when(parkingSpotDAO.claimNextAvailableSlot(any(ParkingType.class))).thenReturn(-1);
+		when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+
+		parkingService.processIncomingVehicle();
+
+		verify(parkingSpotDAO, Mockito.times(0)).updateParking(any(ParkingSpot.class));
+		verify(ticketDAO, Mockito.times(0)).saveTicket(any(Ticket.class));
+	}
+
 	@Test
 	// If an Exception thrown when the method 'getVehicleRegNumber' is called
 	public void testProcessIncomingVehicleRegNumberException() throws Exception {
@@ -323,6 +343,7 @@ public class ParkingServiceTest {
 
 			when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // vehicle reg number
 			when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket); // get ticket for this vehicle reg number
+			when(ticketDAO.getOpenTicket("ABCDEF")).thenReturn(ticket); // open ticket read on exit
 			when(systemDateService.getCurrentDate()).thenReturn(new Date(FIXED_OUT_TIME)); // get out time
 			when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true); // get updated ticket
 			when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true); // updated ticket
@@ -357,6 +378,7 @@ public class ParkingServiceTest {
 
 			when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // vehicle reg number
 			when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket); // get ticket for this vehicle reg number
+			when(ticketDAO.getOpenTicket("ABCDEF")).thenReturn(ticket); // open ticket read on exit
 			when(systemDateService.getCurrentDate()).thenReturn(new Date(FIXED_OUT_TIME)); // get out time
 			when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true); // get updated ticket
 			when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true); // updated ticket
@@ -392,6 +414,7 @@ public class ParkingServiceTest {
 
 			when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // vehicle reg number
 			when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket); // get ticket for this vehicle reg number
+			when(ticketDAO.getOpenTicket("ABCDEF")).thenReturn(ticket); // open ticket read on exit
 			when(systemDateService.getCurrentDate()).thenReturn(new Date(FIXED_OUT_TIME)); // get out time
 			when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true); // get updated ticket
 			when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true); // updated ticket
@@ -441,6 +464,7 @@ public class ParkingServiceTest {
 
 			when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // vehicle reg number
 			when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket); // get ticket for this vehicle reg number
+			when(ticketDAO.getOpenTicket("ABCDEF")).thenReturn(ticket); // open ticket read on exit
 			when(systemDateService.getCurrentDate()).thenReturn(new Date(FIXED_OUT_TIME)); // get out time
 			when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true); // get updated ticket
 			doThrow(new RuntimeException("Database error")).when(parkingSpotDAO).updateParking(any(ParkingSpot.class));
@@ -471,6 +495,7 @@ public class ParkingServiceTest {
 
 			when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF"); // vehicle reg number
 			when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket); // get ticket for this vehicle reg number
+			when(ticketDAO.getOpenTicket("ABCDEF")).thenReturn(ticket); // open ticket read on exit
 			when(systemDateService.getCurrentDate()).thenReturn(new Date(FIXED_OUT_TIME)); // get out time
 			when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(false); // get updated ticket
 			when(ticketDAO.getNbTicket(anyString())).thenReturn(2);
@@ -486,4 +511,28 @@ public class ParkingServiceTest {
 		verify(parkingSpotDAO, Mockito.times(0)).updateParking(any(ParkingSpot.class));
 	}
 
+	@Test
+	// enter() claims the spot itself and reads nothing from the console
+	public void testEnterReturnsReceipt() throws Exception {
+		when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR)).thenReturn(3);
+		when(systemDateService.getCurrentDate()).thenReturn(new Date(FIXED_IN_TIME));
+		when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+		when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(2);
+
+		EntryReceipt receipt = parkingService.enter("ABCDEF", ParkingType.CAR);
+
+		assertEquals(3, receipt.getParkingNumber());
+		assertEquals(FIXED_IN_TIME, receipt.getInTimeMillis());
+		assertTrue(receipt.isRecurringUser());
+		verify(parkingSpotDAO, Mockito.times(0)).updateParking(any(ParkingSpot.class));
+		Mockito.verifyZeroInteractions(inputReaderUtil);
+	}
+
+	@Test
+	public void testEnterWhenParkingIsFull() throws Exception {
+		when(parkingSpotDAO.claimNextAvailableSlot(ParkingType.BIKE)).thenReturn(-1);
+
+		assertThrows(IllegalStateException.class, () -> parkingService.enter("ABCDEF", ParkingType.BIKE));
+		verify(ticketDAO, Mockito.times(0)).saveTicket(any(Ticket.class));
+	}
 }
@@ -0,0 +1,147 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.model.EntryReceipt;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.SystemDateService;
+
+public class ParkingSpotDAOConcurrencyTest {
+
+	private static final int CAR_SPOTS = 50;
+	private static final int ENTRIES = 400;
+
+	private InMemoryDataBaseTestConfig dataBaseConfig;
+	private ParkingSpotDAO parkingSpotDAO;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, CAR_SPOTS, ParkingType.CAR);
+		dataBaseConfig.addParkingSpots(CAR_SPOTS + 1, 10, ParkingType.BIKE);
+		parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		dataBaseConfig.shutdown();
+	}
+
+	@Test
+	public void parallelEntriesNeverShareASpot() throws Exception {
+		assertNoDoubleAllocation();
+	}
+
+	@Test
+	public void parallelEntriesWithSpotIndexNeverShareASpot() throws Exception {
+		parkingSpotDAO.startSpotIndex(60000);
+
+		assertNoDoubleAllocation();
+		assertEquals(0, parkingSpotDAO.getSpotIndex().countAvailable(ParkingType.CAR));
+		parkingSpotDAO.stopSpotIndex();
+	}
+
+	private void assertNoDoubleAllocation() throws Exception {
+		ExecutorService gates = Executors.newFixedThreadPool(32);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> claims = new ArrayList<>();
+		Callable<Integer> entry = () -> {
+			start.await();
+			return parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR);
+		};
+		for (int i = 0; i < ENTRIES; i++) {
+			claims.add(gates.submit(entry));
+		}
+		start.countDown();
+
+		Set<Integer> claimedSpots = new HashSet<>();
+		int rejected = 0;
+		for (Future<Integer> claim : claims) {
+			int spot = claim.get();
+			if (spot > 0) {
+				assertTrue(claimedSpots.add(spot), "Spot " + spot + " was allocated twice");
+				assertTrue(spot <= CAR_SPOTS, "Spot " + spot + " is not a car spot");
+			} else {
+				rejected++;
+			}
+		}
+		gates.shutdown();
+
+		assertEquals(CAR_SPOTS, claimedSpots.size());
+		assertEquals(ENTRIES - CAR_SPOTS, rejected);
+		assertEquals(0, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+		assertEquals(CAR_SPOTS + 1, parkingSpotDAO.getNextAvailableSlot(ParkingType.BIKE));
+	}
+
+	@Test
+	public void parallelEntriesOfOnePlateOpenOneTicket() throws Exception {
+		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+		ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO,
+				new FareCalculatorService(ticketDAO), new SystemDateService(), dataBaseConfig);
+		ExecutorService gates = Executors.newFixedThreadPool(8);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<EntryReceipt>> entries = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			entries.add(gates.submit(() -> {
+				start.await();
+				return parkingService.enter("ABCDEF", ParkingType.CAR);
+			}));
+		}
+		start.countDown();
+
+		int entered = 0;
+		for (Future<EntryReceipt> entry : entries) {
+			try {
+				entry.get();
+				entered++;
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		}
+		gates.shutdown();
+
+		assertEquals(1, entered);
+		assertEquals(1, ticketDAO.getNbTicket("ABCDEF"));
+		assertEquals(2, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+	}
+
+	@Test
+	public void spotIndexFollowsUpdates() {
+		parkingSpotDAO.startSpotIndex(60000);
+
+		assertEquals(1, parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR));
+		assertEquals(2, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+		parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, true));
+		assertEquals(1, parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+		parkingSpotDAO.stopSpotIndex();
+	}
+
+	@Test
+	public void claimReturnsLowestFreeSpot() {
+		assertEquals(1, parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR));
+		assertEquals(2, parkingSpotDAO.claimNextAvailableSlot(ParkingType.CAR));
+		assertEquals(CAR_SPOTS + 1, parkingSpotDAO.claimNextAvailableSlot(ParkingType.BIKE));
+	}
+}
@@ -0,0 +1,81 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+public class ReadReplicaTest {
+
+	private static final long IN_TIME = 1700000000000L;
+
+	private InMemoryDataBaseTestConfig dataBaseConfig;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		dataBaseConfig = InMemoryDataBaseTestConfig.withReplica();
+		dataBaseConfig.addParkingSpots(1, 2, ParkingType.CAR);
+		dataBaseConfig.getReplica().addParkingSpots(1, 2, ParkingType.CAR);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		dataBaseConfig.shutdown();
+	}
+
+	@Test
+	public void lookupsGoToTheReplica() throws Exception {
+		// replicated history the primary is not asked for
+		insertTicket(dataBaseConfig.getReplica(), "ABCDEF");
+		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+
+		assertTrue(dataBaseConfig.hasReplica());
+		assertNotNull(ticketDAO.getTicket("ABCDEF"));
+		assertEquals(1, ticketDAO.getNbTicket("ABCDEF"));
+	}
+
+	@Test
+	public void plateWrittenLatelyIsReadFromThePrimary() throws Exception {
+		TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+		Ticket ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+		ticket.setVehicleRegNumber("ABCDEF");
+		ticket.setInTimeMillis(IN_TIME);
+		assertTrue(ticketDAO.saveTicket(ticket));
+
+		// the replica has not caught up yet
+		assertEquals(ticket.getId(), ticketDAO.getTicket("ABCDEF").getId());
+		assertEquals(1, ticketDAO.getNbTicket("ABCDEF"));
+
+		// another DAO did not write the plate and reads the lagging replica, except in a unit of work
+		TicketDAO otherDAO = new TicketDAO(dataBaseConfig);
+		assertNull(otherDAO.getTicket("ABCDEF"));
+		assertNotNull(dataBaseConfig.inTransaction(() -> otherDAO.getTicket("ABCDEF")));
+	}
+
+	private static void insertTicket(InMemoryDataBaseTestConfig dataBaseConfig, String vehicleRegNumber)
+			throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				PreparedStatement ps = con.prepareStatement(
+						"insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE_CENTS, IN_TIME, OUT_TIME) values(1,?,150,?,?)")) {
+			ps.setString(1, vehicleRegNumber);
+			ps.setTimestamp(2, new Timestamp(IN_TIME));
+			ps.setTimestamp(3, new Timestamp(IN_TIME + 60 * 60 * 1000));
+			ps.executeUpdate();
+		}
+	}
+}
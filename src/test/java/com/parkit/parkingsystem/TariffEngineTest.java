@@ -0,0 +1,97 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.Tariff;
+import com.parkit.parkingsystem.service.TariffEngine;
+
+public class TariffEngineTest {
+
+	private static final long ONE_HOUR = 60 * 60 * 1000;
+	// 2023-11-14 00:00 UTC
+	private static final long MIDNIGHT = 1699920000000L;
+
+	@Test
+	public void defaultTariffChargesTheFareConstants() {
+		Tariff tariff = Tariff.defaults();
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++) {
+			long inTime = MIDNIGHT + random.nextInt(Integer.MAX_VALUE);
+			long duration = (long) (random.nextDouble() * 30 * 24 * ONE_HOUR);
+			boolean discount = random.nextBoolean();
+			long percentToPay = discount ? 100 - Fare.RECURRING_USER_DISCOUNT_PERCENT : 100;
+			long expected = duration < Fare.FREE_PARKING_DURATION_IN_MILLIS ? 0
+					: (duration * Fare.CAR_RATE_PER_HOUR_IN_CENTS * percentToPay + ONE_HOUR * 50) / (ONE_HOUR * 100);
+
+			assertEquals(expected, tariff.fareInCents(inTime, inTime + duration, ParkingType.CAR, discount ? 1 : 0));
+		}
+	}
+
+	@Test
+	public void bandsCapsGraceAndLoyaltyTiersApply() {
+		Properties properties = new Properties();
+		properties.setProperty("zone", "UTC");
+		properties.setProperty("graceMinutes", "15");
+		properties.setProperty("car.bands", "08:00=300,20:00=100");
+		properties.setProperty("car.dailyCapCents", "2000");
+		properties.setProperty("loyalty.tiers", "1:5,10:20");
+		Tariff tariff = Tariff.compile(properties);
+
+		// 19:00 to 21:00, one hour in each band
+		assertEquals(400, tariff.fareInCents(MIDNIGHT + 19 * ONE_HOUR, MIDNIGHT + 21 * ONE_HOUR, ParkingType.CAR, 0));
+		// 23:00 to 09:00 wraps over midnight: 9 hours at 1.00 and one at 3.00
+		assertEquals(1200, tariff.fareInCents(MIDNIGHT + 23 * ONE_HOUR, MIDNIGHT + 33 * ONE_HOUR, ParkingType.CAR, 0));
+		// a whole day costs 12 * 3.00 + 12 * 1.00, capped at 20.00 a day
+		assertEquals(4000, tariff.fareInCents(MIDNIGHT, MIDNIGHT + 48 * ONE_HOUR, ParkingType.CAR, 0));
+		assertEquals(3200, tariff.fareInCents(MIDNIGHT, MIDNIGHT + 48 * ONE_HOUR, ParkingType.CAR, 10));
+		assertEquals(0, tariff.fareInCents(MIDNIGHT, MIDNIGHT + 14 * 60 * 1000, ParkingType.CAR, 0));
+		assertEquals(5, tariff.discountPercent(9));
+	}
+
+	@Test
+	public void bandStartsOutsideTheClockAreRejected() {
+		for (String bands : new String[] { "07:75=100", "-1:30=100", "08:-5=100", "24:00=100", "08:00:00=100" }) {
+			Properties properties = new Properties();
+			properties.setProperty("car.bands", bands);
+			IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Tariff.compile(properties));
+			assertTrue(e.getMessage().startsWith("Invalid band " + bands), e.getMessage());
+		}
+	}
+
+	@Test
+	public void changedFileIsReloadedAndBrokenOneIsIgnored() throws Exception {
+		Path file = Files.createTempFile("tariff", ".properties");
+		try {
+			Files.write(file, "car.bands=00:00=100\n".getBytes(StandardCharsets.UTF_8));
+			TariffEngine tariffEngine = TariffEngine.fromFile(file);
+			assertEquals(100, tariffEngine.calculateFareInCents(MIDNIGHT, MIDNIGHT + ONE_HOUR, ParkingType.CAR, 0));
+			assertFalse(tariffEngine.reloadIfModified());
+
+			Files.write(file, "car.bands=00:00=250\n".getBytes(StandardCharsets.UTF_8));
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+			assertTrue(tariffEngine.reloadIfModified());
+			assertEquals(250, tariffEngine.calculateFareInCents(MIDNIGHT, MIDNIGHT + ONE_HOUR, ParkingType.CAR, 0));
+
+			Files.write(file, "car.bands=08h=250\n".getBytes(StandardCharsets.UTF_8));
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+			assertFalse(tariffEngine.reloadIfModified());
+			assertEquals(250, tariffEngine.calculateFareInCents(MIDNIGHT, MIDNIGHT + ONE_HOUR, ParkingType.CAR, 0));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
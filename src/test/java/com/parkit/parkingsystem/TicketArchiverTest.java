@@ -0,0 +1,111 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.SystemDateService;
+import com.parkit.parkingsystem.service.TicketArchiver;
+
+public class TicketArchiverTest {
+
+	private static final long HOUR = 60 * 60 * 1000L;
+	private static final long DAY = 24 * HOUR;
+	private static final long NOW = 1700000000000L;
+
+	private InMemoryDataBaseTestConfig dataBaseConfig;
+	private TicketDAO ticketDAO;
+	private TicketArchiver ticketArchiver;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, 2, ParkingType.CAR);
+		ticketDAO = new TicketDAO(dataBaseConfig);
+		SystemDateService dateService = mock(SystemDateService.class);
+		when(dateService.getCurrentDate()).thenReturn(new Date(NOW));
+		ticketArchiver = new TicketArchiver(ticketDAO, dateService, 30 * DAY, 2);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		dataBaseConfig.shutdown();
+	}
+
+	@Test
+	public void oldClosedTicketsMoveToTheArchiveAndStayVisible() throws Exception {
+		insertTicket("ABCDEF", NOW - 90 * DAY, NOW - 90 * DAY + HOUR);
+		insertTicket("ABCDEF", NOW - 60 * DAY, NOW - 60 * DAY + HOUR);
+		insertTicket("ABCDEF", NOW - 40 * DAY, NOW - 40 * DAY + HOUR);
+		insertTicket("ABCDEF", NOW - DAY, NOW - DAY + HOUR);
+		insertTicket("GHIJKL", NOW - 50 * DAY, NOW - 50 * DAY + HOUR);
+		// parked for months, open tickets are never archived
+		insertTicket("MNOPQR", NOW - 50 * DAY, Ticket.NO_TIME);
+
+		assertEquals(4, ticketArchiver.archive());
+
+		assertEquals(2, countRows("ticket"));
+		assertEquals(4, countRows("ticket_archive"));
+		TicketDAO freshDAO = new TicketDAO(dataBaseConfig);
+		assertEquals(4, freshDAO.getNbTicket("ABCDEF"));
+		assertEquals(1, freshDAO.getNbTicket("GHIJKL"));
+		assertEquals(NOW - DAY, freshDAO.getTicket("ABCDEF").getInTimeMillis());
+		// only in the archive
+		assertEquals(NOW - 50 * DAY, freshDAO.getTicket("GHIJKL").getInTimeMillis());
+		assertNull(freshDAO.getTicket("UNKNOWN"));
+		AtomicInteger closedTickets = new AtomicInteger();
+		assertTrue(freshDAO.streamClosedTickets(NOW - 100 * DAY, NOW,
+				(inTime, outTime, parkingType, priceInCents) -> closedTickets.incrementAndGet()));
+		assertEquals(5, closedTickets.get());
+	}
+
+	@Test
+	public void archivedCountsAddUpAcrossRuns() throws Exception {
+		insertTicket("ABCDEF", NOW - 90 * DAY, NOW - 90 * DAY + HOUR);
+		assertEquals(1, ticketArchiver.archive());
+		insertTicket("ABCDEF", NOW - 60 * DAY, NOW - 60 * DAY + HOUR);
+
+		assertEquals(1, ticketArchiver.archive());
+		assertEquals(0, ticketArchiver.archive());
+
+		assertEquals(0, countRows("ticket"));
+		assertEquals(2, new TicketDAO(dataBaseConfig).getNbTicket("ABCDEF"));
+	}
+
+	private void insertTicket(String vehicleRegNumber, long inTime, long outTime) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				PreparedStatement ps = con.prepareStatement(
+						"insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE_CENTS, IN_TIME, OUT_TIME) values(1,?,150,?,?)")) {
+			ps.setString(1, vehicleRegNumber);
+			ps.setTimestamp(2, new Timestamp(inTime));
+			ps.setTimestamp(3, outTime == Ticket.NO_TIME ? null : new Timestamp(outTime));
+			ps.executeUpdate();
+		}
+	}
+
+	private int countRows(String table) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				PreparedStatement ps = con.prepareStatement("select count(*) from " + table);
+				ResultSet rs = ps.executeQuery()) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketCountCache;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.SystemDateService;
+
+public class TicketCountCacheTest {
+
+	@Test
+	public void countReadByAnEntryIsServedFromTheCache() throws Exception {
+		InMemoryDataBaseTestConfig dataBaseConfig = new InMemoryDataBaseTestConfig();
+		try {
+			dataBaseConfig.addParkingSpots(1, 2, ParkingType.CAR);
+			TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+			ParkingService parkingService = new ParkingService(null, new ParkingSpotDAO(dataBaseConfig), ticketDAO,
+					new FareCalculatorService(ticketDAO), new SystemDateService(), dataBaseConfig);
+
+			assertFalse(parkingService.enter("ABCDEF", ParkingType.CAR).isRecurringUser());
+			// behind the DAO's back, only a cached count still has the ticket
+			try (Connection con = dataBaseConfig.getConnection(); Statement statement = con.createStatement()) {
+				statement.executeUpdate("delete from ticket");
+			}
+
+			assertEquals(1, ticketDAO.getNbTicket("ABCDEF"));
+		} finally {
+			dataBaseConfig.shutdown();
+		}
+	}
+
+	@Test
+	public void writeOfAnotherPlateKeepsTheCountRead() {
+		TicketCountCache cache = new TicketCountCache(10, 60000);
+		long stamp = cache.stamp("ABCDEF");
+		cache.invalidate("GHIJKL");
+		cache.increment("GHIJKL");
+
+		assertTrue(cache.putIfUnchanged("ABCDEF", 2, stamp));
+		assertEquals(2, cache.get("ABCDEF"));
+	}
+
+	@Test
+	public void countReadBeforeAnotherGateSavedATicketIsNotCached() throws Exception {
+		TicketCountCache cache = new TicketCountCache(10, 60000);
+		long stamp = cache.stamp("ABCDEF");
+		Thread otherGate = new Thread(() -> cache.increment("ABCDEF"));
+		otherGate.start();
+		otherGate.join();
+
+		assertFalse(cache.putIfUnchanged("ABCDEF", 2, stamp));
+		assertEquals(-1, cache.get("ABCDEF"));
+	}
+
+	@Test
+	public void countReadBeforeATicketIsSavedInTheSameUnitOfWorkIsNotCached() {
+		TicketCountCache cache = new TicketCountCache(10, 60000);
+		long stamp = cache.stamp("ABCDEF");
+		cache.invalidate("ABCDEF");
+		cache.increment("ABCDEF");
+
+		assertFalse(cache.putIfUnchanged("ABCDEF", 2, stamp));
+	}
+}
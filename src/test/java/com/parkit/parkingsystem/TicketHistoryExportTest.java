@@ -0,0 +1,118 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketHistoryReader;
+import com.parkit.parkingsystem.dao.TicketHistoryWriter;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.service.TicketHistoryExporter;
+
+public class TicketHistoryExportTest {
+
+	private static final long HOUR = 60 * 60 * 1000L;
+	private static final long DAY = 24 * HOUR;
+	private static final long START = 1700000000000L;
+
+	private Path historyFile;
+
+	@BeforeEach
+	private void setUpPerTest() throws Exception {
+		historyFile = Files.createTempFile("ticket-history", ".bin");
+	}
+
+	@AfterEach
+	private void tearDownPerTest() throws Exception {
+		Files.deleteIfExists(historyFile);
+	}
+
+	@Test
+	public void exportedTicketsReadBackWithTheirColumns() throws Exception {
+		InMemoryDataBaseTestConfig dataBaseConfig = new InMemoryDataBaseTestConfig();
+		try {
+			dataBaseConfig.addParkingSpots(1, 3, ParkingType.CAR);
+			dataBaseConfig.addParkingSpots(4, 1, ParkingType.BIKE);
+			insertTicket(dataBaseConfig, "ABCDEF", 2, START, START + 2 * HOUR, 300);
+			insertTicket(dataBaseConfig, "GHIJKL", 4, START + HOUR, START + HOUR + 20 * 60 * 1000, 0);
+			insertTicket(dataBaseConfig, "ABCDEF", 3, START + 3 * DAY, START + 3 * DAY + HOUR, 150);
+			// still parked, not exported
+			insertTicket(dataBaseConfig, "MNOPQR", 1, START, 0, 0);
+			TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+			// the oldest exit is in the archive, the export reads both tiers
+			assertEquals(1, ticketDAO.archiveClosedTickets(START + HOUR + 30 * 60 * 1000, 10));
+
+			long exported = new TicketHistoryExporter(ticketDAO, 2, 64 * 1024).export(new Date(START),
+					new Date(START + 10 * DAY), historyFile);
+
+			assertEquals(3, exported);
+			List<String> rows = new ArrayList<>();
+			try (TicketHistoryReader reader = new TicketHistoryReader(historyFile)) {
+				assertEquals(3, reader.getRowCount());
+				assertEquals(2, reader.getRowGroupCount());
+				reader.scan(START, START + 10 * DAY, (inTime, outTime, vehicleRegNumber, parkingNumber, parkingType,
+						priceInCents) -> rows.add(vehicleRegNumber + " " + parkingNumber + " " + parkingType + " "
+								+ (inTime - START) / 60000 + " " + (outTime - START) / 60000 + " " + priceInCents));
+			}
+			assertEquals("[GHIJKL 4 BIKE 60 80 0, ABCDEF 2 CAR 0 120 300, ABCDEF 3 CAR 4320 4380 150]",
+					rows.toString());
+		} finally {
+			dataBaseConfig.shutdown();
+		}
+	}
+
+	@Test
+	public void scanSkipsRowGroupsOutsideThePeriod() throws Exception {
+		// a small buffer so that row groups span several flushes
+		try (TicketHistoryWriter writer = new TicketHistoryWriter(historyFile, 1000, 1024)) {
+			for (int ticket = 0; ticket < 10000; ticket++) {
+				long outTime = START + ticket * HOUR;
+				writer.write(outTime - 90 * 60 * 1000, outTime, "P" + ticket % 250, 1 + ticket % 40,
+						ticket % 3 == 0 ? ParkingType.BIKE : ParkingType.CAR, 100 + ticket);
+			}
+		}
+
+		try (TicketHistoryReader reader = new TicketHistoryReader(historyFile)) {
+			long from = START + 2500 * HOUR;
+			long to = START + 2600 * HOUR;
+			long[] priceSum = new long[1];
+
+			assertEquals(10, reader.getRowGroupCount());
+			assertEquals(1, reader.getRowGroupsToScan(from, to));
+			assertEquals(100, reader.scan(from, to, (inTime, outTime, vehicleRegNumber, parkingNumber, parkingType,
+					priceInCents) -> priceSum[0] += priceInCents));
+			// tickets 2500 to 2599
+			assertEquals(100 * 100 + (2500 + 2599) * 50, priceSum[0]);
+			assertEquals(10000, reader.scan(0, Long.MAX_VALUE, (inTime, outTime, vehicleRegNumber, parkingNumber,
+					parkingType, priceInCents) -> {
+			}));
+		}
+	}
+
+	private static void insertTicket(InMemoryDataBaseTestConfig dataBaseConfig, String vehicleRegNumber,
+			int parkingNumber, long inTime, long outTime, long priceInCents) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				PreparedStatement ps = con.prepareStatement(
+						"insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE_CENTS, IN_TIME, OUT_TIME) values(?,?,?,?,?)")) {
+			ps.setInt(1, parkingNumber);
+			ps.setString(2, vehicleRegNumber);
+			ps.setLong(3, priceInCents);
+			ps.setTimestamp(4, new Timestamp(inTime));
+			ps.setTimestamp(5, outTime == 0 ? null : new Timestamp(outTime));
+			ps.executeUpdate();
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.parkit.parkingsystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.model.EntryReceipt;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.SystemDateService;
+
+public class TicketWritePipelineTest {
+
+	private static final long HOUR = 60 * 60 * 1000;
+	private static final long IN_TIME = 1700000000000L;
+
+	private InMemoryDataBaseTestConfig dataBaseConfig;
+	private TicketDAO ticketDAO;
+
+	@BeforeEach
+	private void setUpPerTest() {
+		dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, 100, ParkingType.CAR);
+		ticketDAO = new TicketDAO(dataBaseConfig);
+		ticketDAO.startWritePipeline(3, 50, 20, 50);
+	}
+
+	@AfterEach
+	private void tearDownPerTest() {
+		ticketDAO.stopWritePipeline();
+		dataBaseConfig.shutdown();
+	}
+
+	@Test
+	public void writesOfAPlateAreAppliedInOrder() throws Exception {
+		List<CompletableFuture<Boolean>> writes = new ArrayList<>();
+		// each plate enters, leaves and enters again before anything is flushed
+		for (int plate = 0; plate < 30; plate++) {
+			Ticket first = openTicket("PLATE" + plate, plate + 1, IN_TIME);
+			writes.add(ticketDAO.saveTicketAsync(first));
+			Ticket closing = ticketDAO.getOpenTicket("PLATE" + plate);
+			closing.setOutTime(new Date(IN_TIME + HOUR));
+			closing.setPrice(1.5);
+			writes.add(ticketDAO.updateTicketAsync(closing));
+			writes.add(ticketDAO.saveTicketAsync(openTicket("PLATE" + plate, plate + 1, IN_TIME + 2 * HOUR)));
+		}
+		for (CompletableFuture<Boolean> write : writes) {
+			assertTrue(write.get(10, TimeUnit.SECONDS));
+		}
+
+		assertEquals(60, count("select count(*) from ticket"));
+		assertEquals(30, count("select count(*) from ticket where OUT_TIME is null"));
+		assertEquals(30, count("select count(*) from ticket where PRICE_CENTS = 150"));
+		assertEquals(IN_TIME + 2 * HOUR, ticketDAO.getOpenTicket("PLATE7").getInTimeMillis());
+	}
+
+	@Test
+	public void vehicleEntersAndExitsThroughThePipeline() throws Exception {
+		SystemDateService systemDateService = new SystemDateService() {
+			private long now = IN_TIME;
+
+			@Override
+			public Date getCurrentDate() {
+				Date date = new Date(now);
+				now += HOUR;
+				return date;
+			}
+		};
+		ParkingService parkingService = new ParkingService(null, new ParkingSpotDAO(dataBaseConfig), ticketDAO,
+				new FareCalculatorService(ticketDAO), systemDateService, dataBaseConfig);
+
+		EntryReceipt receipt = parkingService.enter("ABCDEF", ParkingType.CAR);
+		Ticket ticket = parkingService.exit("ABCDEF");
+
+		assertEquals(1, receipt.getParkingNumber());
+		assertFalse(receipt.isRecurringUser());
+		assertEquals(1.5, ticket.getPrice());
+		assertEquals(1, count("select count(*) from ticket where OUT_TIME is not null and PRICE_CENTS = 150"));
+		assertEquals(0, count("select count(*) from parking where AVAILABLE = false"));
+	}
+
+	@Test
+	public void failingWriteDoesNotFailItsBatch() throws Exception {
+		List<CompletableFuture<Boolean>> writes = new ArrayList<>();
+		for (int plate = 0; plate < 30; plate++) {
+			writes.add(ticketDAO.saveTicketAsync(openTicket("PLATE" + plate, plate + 1, IN_TIME)));
+		}
+		// too long for the column
+		CompletableFuture<Boolean> failing = ticketDAO.saveTicketAsync(openTicket("PLATE-TOO-LONG", 31, IN_TIME));
+
+		assertFalse(failing.get(10, TimeUnit.SECONDS));
+		for (CompletableFuture<Boolean> write : writes) {
+			assertTrue(write.get(10, TimeUnit.SECONDS));
+		}
+		assertEquals(30, count("select count(*) from ticket"));
+	}
+
+	@Test
+	public void ticketClosedByAnotherGateIsNotClosedAgain() throws Exception {
+		assertTrue(ticketDAO.saveTicketAsync(openTicket("ABCDEF", 1, IN_TIME)).get(10, TimeUnit.SECONDS));
+		TicketDAO otherDAO = new TicketDAO(dataBaseConfig);
+		Ticket seenByOther = otherDAO.getOpenTicket("ABCDEF");
+		Ticket closing = ticketDAO.getOpenTicket("ABCDEF");
+		closing.setOutTime(new Date(IN_TIME + HOUR));
+		closing.setPrice(1.5);
+		assertTrue(ticketDAO.updateTicketAsync(closing).get(10, TimeUnit.SECONDS));
+
+		seenByOther.setOutTime(new Date(IN_TIME + 2 * HOUR));
+		seenByOther.setPrice(3);
+
+		assertFalse(otherDAO.updateTicket(seenByOther));
+		assertNull(otherDAO.getOpenTicket("ABCDEF"));
+		assertEquals(1, count("select count(*) from ticket where PRICE_CENTS = 150"));
+	}
+
+	private static Ticket openTicket(String vehicleRegNumber, int parkingNumber, long inTime) {
+		Ticket ticket = new Ticket();
+		ticket.setVehicleRegNumber(vehicleRegNumber);
+		ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.CAR, false));
+		ticket.setInTime(new Date(inTime));
+		return ticket;
+	}
+
+	private int count(String sql) throws Exception {
+		try (Connection con = dataBaseConfig.getConnection();
+				Statement statement = con.createStatement();
+				ResultSet rs = statement.executeQuery(sql)) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+}
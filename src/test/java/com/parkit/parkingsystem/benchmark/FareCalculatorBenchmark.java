@@ -0,0 +1,66 @@
+package com.parkit.parkingsystem.benchmark;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FareCalculatorBenchmark {
+
+	@Param({ "CAR", "BIKE" })
+	public ParkingType parkingType;
+
+	@Param({ "false", "true" })
+	public boolean discount;
+
+	// 45 minutes and a full day
+	@Param({ "45", "1440" })
+	public int durationMinutes;
+
+	private FareCalculatorService fareCalculatorService;
+	private Ticket ticket;
+
+	@Setup
+	public void setUp() {
+		fareCalculatorService = new FareCalculatorService(null);
+		long outTime = System.currentTimeMillis();
+		ticket = new Ticket();
+		ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+		ticket.setVehicleRegNumber("BENCH01");
+		ticket.setInTime(new Date(outTime - durationMinutes * 60L * 1000L));
+		ticket.setOutTime(new Date(outTime));
+	}
+
+	@Benchmark
+	public double calculateFare() {
+		return fareCalculatorService.calculateFare(ticket, discount);
+	}
+
+	// expected to report 0 B/op with -prof gc
+	@Benchmark
+	public long calculateFareInCents() {
+		return fareCalculatorService.calculateFareInCents(ticket.getInTimeMillis(), ticket.getOutTimeMillis(),
+				parkingType, discount);
+	}
+}
@@ -0,0 +1,139 @@
+package com.parkit.parkingsystem.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.parkit.parkingsystem.config.StorageConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketRepository;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.SystemDateService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+
+// Entry and exit workflows against the in-memory H2 database, or the in-memory storage to measure
+// the service logic alone. Each measured entry is followed by an unmeasured exit and each
+// measured exit by an unmeasured entry, so the lot never fills up.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GateWorkflowBenchmark {
+
+	@State(Scope.Thread)
+	public static class Gate {
+		@Param({ "h2", "memory" })
+		private String storage;
+
+		private PrintStream console;
+		private InMemoryDataBaseTestConfig dataBaseConfig;
+		ParkingService parkingService;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			// the workflows print to the console, keep that out of the measurement
+			console = System.out;
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			}));
+			if ("memory".equals(storage)) {
+				Map<ParkingType, Integer> spotsPerType = new EnumMap<>(ParkingType.class);
+				spotsPerType.put(ParkingType.CAR, 10);
+				StorageConfig storageConfig = StorageConfig.inMemory(spotsPerType);
+				TicketRepository ticketRepository = storageConfig.getTicketRepository();
+				parkingService = new ParkingService(new ScriptedInputReaderUtil(),
+						storageConfig.getParkingSpotRepository(), ticketRepository,
+						new FareCalculatorService(ticketRepository), new SteppingDateService());
+				return;
+			}
+			dataBaseConfig = new InMemoryDataBaseTestConfig();
+			dataBaseConfig.addParkingSpots(1, 10, ParkingType.CAR);
+			ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO(dataBaseConfig);
+			TicketDAO ticketDAO = new TicketDAO(dataBaseConfig);
+			parkingService = new ParkingService(new ScriptedInputReaderUtil(), parkingSpotDAO, ticketDAO,
+					new FareCalculatorService(ticketDAO), new SteppingDateService(), dataBaseConfig);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			System.setOut(console);
+			if (dataBaseConfig != null) {
+				dataBaseConfig.shutdown();
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ParkedVehicle {
+		@Setup(Level.Invocation)
+		public void park(Gate gate) {
+			gate.parkingService.processIncomingVehicle();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class LeavingVehicle {
+		@TearDown(Level.Invocation)
+		public void leave(Gate gate) {
+			gate.parkingService.processExitingVehicle();
+		}
+	}
+
+	@Benchmark
+	public void processIncomingVehicle(Gate gate, LeavingVehicle leavingVehicle) {
+		gate.parkingService.processIncomingVehicle();
+	}
+
+	@Benchmark
+	public void processExitingVehicle(Gate gate, ParkedVehicle parkedVehicle) {
+		gate.parkingService.processExitingVehicle();
+	}
+
+	// Always a car with the same plate
+	private static class ScriptedInputReaderUtil extends InputReaderUtil {
+		@Override
+		public int readSelection() {
+			return 1;
+		}
+
+		@Override
+		public String readVehicleRegistrationNumber() {
+			return "BENCH01";
+		}
+	}
+
+	// Moves one hour forward on every call so that each exit is priced for a one hour stay
+	private static class SteppingDateService extends SystemDateService {
+		private long now = System.currentTimeMillis();
+
+		@Override
+		public Date getCurrentDate() {
+			now += 60 * 60 * 1000;
+			return new Date(now);
+		}
+	}
+}
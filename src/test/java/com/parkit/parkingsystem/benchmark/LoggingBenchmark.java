@@ -0,0 +1,41 @@
+package com.parkit.parkingsystem.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// processExitingVehicle under three logging setups, each in its own JVM since log4j is
+// configured once per process. Logs go to target/benchmark-logs.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LoggingBenchmark {
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark-sync-verbose.xml")
+	public void exitWithSyncVerboseLogging(GateWorkflowBenchmark.Gate gate,
+			GateWorkflowBenchmark.ParkedVehicle parkedVehicle) {
+		gate.parkingService.processExitingVehicle();
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark-sync.xml")
+	public void exitWithSyncLogging(GateWorkflowBenchmark.Gate gate,
+			GateWorkflowBenchmark.ParkedVehicle parkedVehicle) {
+		gate.parkingService.processExitingVehicle();
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark-async.xml")
+	public void exitWithAsyncLogging(GateWorkflowBenchmark.Gate gate,
+			GateWorkflowBenchmark.ParkedVehicle parkedVehicle) {
+		gate.parkingService.processExitingVehicle();
+	}
+}
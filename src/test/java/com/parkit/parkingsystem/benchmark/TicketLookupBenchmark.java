@@ -0,0 +1,102 @@
+package com.parkit.parkingsystem.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.InMemoryDataBaseTestConfig;
+import com.parkit.parkingsystem.model.Ticket;
+
+// getTicket latency against a large ticket history, with and without the V1 indexes, and with
+// and without the prepared statement cache (statementCacheSize=0).
+// For the 10M rows case: -Djmh.args="TicketLookupBenchmark -p rows=10000000 -jvmArgs -Xmx8g"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TicketLookupBenchmark {
+
+	private static final int VISITS_PER_PLATE = 10;
+
+	@Param({ "100000" })
+	public int rows;
+
+	@Param({ "true", "false" })
+	public boolean indexed;
+
+	@Param({ "64", "0" })
+	public int statementCacheSize;
+
+	private InMemoryDataBaseTestConfig dataBaseConfig;
+	private TicketDAO ticketDAO;
+	private int plates;
+
+	@Setup
+	public void setUp() throws Exception {
+		System.setProperty("parkit.db.statementCacheSize", Integer.toString(statementCacheSize));
+		dataBaseConfig = new InMemoryDataBaseTestConfig();
+		dataBaseConfig.addParkingSpots(1, 10, ParkingType.CAR);
+		ticketDAO = new TicketDAO(dataBaseConfig);
+		plates = Math.max(1, rows / VISITS_PER_PLATE);
+
+		try (Connection con = dataBaseConfig.getConnection();
+				PreparedStatement ps = con.prepareStatement(
+						"insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE_CENTS, IN_TIME, OUT_TIME) values(?,?,?,?,?)")) {
+			long start = System.currentTimeMillis() - rows * 60L * 1000L;
+			for (int row = 0; row < rows; row++) {
+				long inTime = start + row * 60L * 1000L;
+				ps.setInt(1, 1 + row % 10);
+				ps.setString(2, plate(row % plates));
+				ps.setLong(3, 150);
+				ps.setTimestamp(4, new Timestamp(inTime));
+				ps.setTimestamp(5, new Timestamp(inTime + 60L * 60L * 1000L));
+				ps.addBatch();
+				if (row % 10000 == 9999) {
+					ps.executeBatch();
+				}
+			}
+			ps.executeBatch();
+			if (!indexed) {
+				try (Statement statement = con.createStatement()) {
+					statement.execute("drop index IDX_TICKET_PLATE_IN_TIME");
+					statement.execute("drop index IDX_TICKET_PLATE_OUT_TIME");
+				}
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		dataBaseConfig.shutdown();
+		System.clearProperty("parkit.db.statementCacheSize");
+	}
+
+	@Benchmark
+	public Ticket getTicket() {
+		return ticketDAO.getTicket(plate(ThreadLocalRandom.current().nextInt(plates)));
+	}
+
+	private static String plate(int number) {
+		return "P" + number;
+	}
+}
@@ -86,6 +86,8 @@ public class ParkingDataBaseIT {
 				.thenReturn(new Date(FIXED_OUT_TIME));
 
 		dataBasePrepareService.clearDataBaseEntries();
+		// the tables were cleared behind the DAO's back, start again with an empty ticket count cache
+		ticketDAO = new TicketDAO(dataBaseTestConfig);
 	}
 
 	@AfterEach
@@ -0,0 +1,109 @@
+package com.parkit.parkingsystem.integration.config;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.Facility;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+// H2 database in MySQL mode, one fresh database per instance
+public class InMemoryDataBaseTestConfig extends DataBaseConfig {
+
+	private static final AtomicInteger databaseCounter = new AtomicInteger();
+
+	private final String url;
+	private final InMemoryDataBaseTestConfig replica;
+
+	public InMemoryDataBaseTestConfig() {
+		this(newUrl(), null);
+	}
+
+	private InMemoryDataBaseTestConfig(String url, InMemoryDataBaseTestConfig replica) {
+		super(url, "sa", "", replica == null ? null : replica.url, "sa", "");
+		this.url = url;
+		this.replica = replica;
+		// the base schema must exist before the pool is created and runs the migrations
+		try (Connection con = DriverManager.getConnection(url, "sa", "")) {
+			runScript(con, "/schema-h2.sql");
+		} catch (SQLException e) {
+			throw new IllegalStateException("Unable to create test schema", e);
+		}
+	}
+
+	// Primary with a second database as read replica. Nothing is replicated, tests write to the
+	// replica directly to play the replication.
+	public static InMemoryDataBaseTestConfig withReplica() {
+		InMemoryDataBaseTestConfig replica = new InMemoryDataBaseTestConfig();
+		// the schema of a replica comes from the primary, here it is migrated on its own
+		replica.getConnectionPool();
+		return new InMemoryDataBaseTestConfig(newUrl(), replica);
+	}
+
+	public InMemoryDataBaseTestConfig getReplica() {
+		return replica;
+	}
+
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		if (replica != null) {
+			replica.shutdown();
+		}
+	}
+
+	private static String newUrl() {
+		return "jdbc:h2:mem:parkit" + databaseCounter.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+	}
+
+	public void runScript(String resource) {
+		try (Connection con = getConnection()) {
+			runScript(con, resource);
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to run script " + resource, e);
+		}
+	}
+
+	private static void runScript(Connection con, String resource) {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				InMemoryDataBaseTestConfig.class.getResourceAsStream(resource), StandardCharsets.UTF_8));
+				Statement statement = con.createStatement()) {
+			String script = reader.lines().collect(Collectors.joining("\n"));
+			for (String sql : script.split(";")) {
+				if (!sql.trim().isEmpty()) {
+					statement.execute(sql);
+				}
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to run script " + resource, e);
+		}
+	}
+
+	public void addParkingSpots(int firstNumber, int count, ParkingType parkingType) {
+		addParkingSpots(Facility.DEFAULT_ID, firstNumber, count, parkingType);
+	}
+
+	public void addParkingSpots(int facilityId, int firstNumber, int count, ParkingType parkingType) {
+		try (Connection con = getConnection();
+				PreparedStatement ps = con.prepareStatement(
+						"insert into parking(PARKING_NUMBER,AVAILABLE,TYPE,FACILITY_ID) values(?,true,?,?)")) {
+			for (int number = firstNumber; number < firstNumber + count; number++) {
+				ps.setInt(1, number);
+				ps.setString(2, parkingType.toString());
+				ps.setInt(3, facilityId);
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to add parking spots", e);
+		}
+	}
+}